@@ -0,0 +1,246 @@
+package main;
+
+import java.util.Locale;
+
+/**
+ * Benchmarks of the engine: move generation, make/unmake, the static evaluation
+ * and a whole search at every difficulty, over a fixed suite of positions of every board size.
+ * A search goes to a fixed depth without a time limit, so every one does the same work: its time per search
+ * and its nodes per search are printed with the nodes per second, so pruning which saves nodes shows.
+ * Every benchmark is warmed up before it is measured, so the JIT has compiled the code it times.
+ * Usage: java main.Benchmark [filter] - run only the benchmarks whose name contains the filter,
+ * e.g. "10x10" or "search".
+ * @author Daniel Kanevsky
+ */
+final class Benchmark {
+
+    private Benchmark(){}
+
+    // Rounds and length of a round in milliseconds, of the fast benchmarks and of the searches
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final long ROUND_TIME = 200;
+    private static final int SEARCH_WARMUP_ROUNDS = 1;
+    private static final int SEARCH_MEASURED_ROUNDS = 3;
+    private static final long SEARCH_ROUND_TIME = 1000;
+
+    // Board sizes benchmarked: length and pawn rows
+    private static final int[][] SIZES = {{8, 3}, {10, 4}, {12, 5}};
+
+    // Opening, middlegame and king endgame of every board size, by SIZES
+    private static final String[] PHASES = {"opening", "middlegame", "endgame"};
+    private static final String[][] POSITIONS = {
+        {
+            null, // The start position
+            "B:Wb6,a3,c3,b2,h2,c1,e1:Bb8,d8,f8,c7,g7,a5",
+            "W:WKa1,c3,e3:BKh8,d6,f6"
+        },
+        {
+            null,
+            "W:Wf6,i5,d4,c3,i3,b2,d2,f2,h2,a1,c1,e1:Bb10,f10,j10,e9,g9,i9,h8,j8,c7,d6,a5",
+            "B:WKb2,Ke5,g3,i3:BKj10,Kc9,b6,h6"
+        },
+        {
+            null,
+            "W:Wb6,a5,i5,k5,f4,j4,c3,e3,g3,i3,k3,b2,f2,h2,l2,a1,c1,e1,g1:Bb12,f12,h12,l12,a11,g11,i11,b10,d10,f10,h10,l10,i9,k9,j8,l8,l6",
+            "W:WKa1,Kf6,c3,g3,k3:BKl12,Kd10,c9,g9,j8"
+        }
+    };
+
+    // Search depths of the difficulties. Hard, which the board searches as deep as its thinking time allows,
+    // is searched to a depth its searches reach
+    private static final int HARD_DEPTH = 10;
+    private static final String[] LEVELS = {"easy", "medium", "hard"};
+    private static final int[] LEVEL_DEPTHS = {Main.EASY, Main.MEDIUM, HARD_DEPTH};
+
+    // Results of the operations, so the JIT can't eliminate them as dead code
+    private static volatile long sink;
+
+    // Repetitions of a fast operation timed together
+    private static final int BATCH = 1000;
+
+    // A benchmarked operation, returns how many times it did the measured work
+    private interface Operation
+    {
+        long run();
+
+        // Prepare the next run, not timed
+        default void setUp(){}
+
+        // Nodes searched by all the runs so far, 0 if it doesn't search
+        default long nodes()
+        {
+            return 0;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        String filter = args.length > 0 ? args[0] : "";
+        // One thread, so the searches are comparable between machines
+        Computer.comp.threads = 1;
+        // No time limit, every search goes to its depth
+        Computer.comp.timeBudget = 0;
+
+        System.out.println(String.format(Locale.ROOT, "%-32s %14s %14s", "benchmark", "ns/op", "ops/s"));
+        for (int size = 0; size < SIZES.length; size++)
+        {
+            for (int phase = 0; phase < PHASES.length; phase++)
+            {
+                Position position = position(size, phase);
+                String name = position.LENGTH + "x" + position.LENGTH + "/" + PHASES[phase] + "/";
+
+                if ((name + "generateMoves").contains(filter))
+                    measure(name + "generateMoves", generateMoves(position), WARMUP_ROUNDS, MEASURED_ROUNDS, ROUND_TIME);
+                if ((name + "makeUndo").contains(filter))
+                    measure(name + "makeUndo", makeUndo(position), WARMUP_ROUNDS, MEASURED_ROUNDS, ROUND_TIME);
+                if ((name + "evaluatePosition").contains(filter))
+                    measure(name + "evaluatePosition", evaluatePosition(position), WARMUP_ROUNDS, MEASURED_ROUNDS, ROUND_TIME);
+                for (int level = 0; level < LEVELS.length; level++)
+                {
+                    if ((name + "search/" + LEVELS[level]).contains(filter))
+                        measure(name + "search/" + LEVELS[level], search(position, LEVEL_DEPTHS[level]),
+                                SEARCH_WARMUP_ROUNDS, SEARCH_MEASURED_ROUNDS, SEARCH_ROUND_TIME);
+                }
+            }
+        }
+    }
+
+    private static Position position(int size, int phase)
+    {
+        String fen = POSITIONS[size][phase];
+        if (fen != null)
+            return Position.fromFen(fen, SIZES[size][0], SIZES[size][1]);
+        Position position = new Position(SIZES[size][0], SIZES[size][1]);
+        position.setStartPosition();
+        return position;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Operations">
+    // Generate the moves of the position
+    private static Operation generateMoves(Position position)
+    {
+        long[] moves = new long[Math.max(position.roomForMoves(), position.generateMoves().length)];
+        return () -> {
+            for (int i = 0; i < BATCH; i++)
+                sink += position.generateMoves(moves, 0);
+            return BATCH;
+        };
+    }
+
+    // Make and take back every move of the position, an op is one move
+    private static Operation makeUndo(Position position)
+    {
+        long[] moves = position.generateMoves();
+        int end = moves.length;
+        return () -> {
+            for (int k = 0; k < BATCH; k++)
+            {
+                for (int i = 0; i < end; i++)
+                {
+                    position.makeMove(moves[i]);
+                    sink += position.hash;
+                    position.undoMove(moves[i]);
+                }
+            }
+            return (long) BATCH * end;
+        };
+    }
+
+    // Evaluate the position statically
+    private static Operation evaluatePosition(Position position)
+    {
+        Computer.comp.position = position;
+        return () -> {
+            for (int i = 0; i < BATCH; i++)
+                sink += Computer.comp.evaluatePosition();
+            return BATCH;
+        };
+    }
+
+    // Find the best move with an empty table, an op is one search
+    private static Operation search(Position position, int depth)
+    {
+        return new Operation() {
+            private long nodes;
+
+            @Override
+            public void setUp()
+            {
+                Computer.comp.depthMax = depth;
+                Computer.comp.clearTable();
+                Computer.comp.position = new Position(position);
+            }
+
+            @Override
+            public long run()
+            {
+                sink += Computer.comp.play();
+                nodes += Computer.comp.nodes();
+                return 1;
+            }
+
+            @Override
+            public long nodes()
+            {
+                return nodes;
+            }
+        };
+    }
+    //</editor-fold>
+
+    /**
+     * Run the operation in rounds of a fixed length, and print the time per op
+     * averaged over the measured rounds, with the deviation between them,
+     * and the nodes per op and per second of an operation which searches
+     */
+    private static void measure(String name, Operation operation, int warmupRounds, int measuredRounds, long roundTime)
+    {
+        for (int round = 0; round < warmupRounds; round++)
+            round(operation, roundTime);
+
+        double[] nanosPerOp = new double[measuredRounds];
+        double mean = 0;
+        long ops = 0;
+        long timed = 0;
+        long nodes = operation.nodes();
+        for (int round = 0; round < measuredRounds; round++)
+        {
+            long[] measured = round(operation, roundTime);
+            nanosPerOp[round] = (double) measured[0] / Math.max(measured[1], 1);
+            mean += nanosPerOp[round] / measuredRounds;
+            timed += measured[0];
+            ops += measured[1];
+        }
+        nodes = operation.nodes() - nodes;
+        double variance = 0;
+        for (double value : nanosPerOp)
+            variance += (value - mean) * (value - mean) / measuredRounds;
+
+        String line = String.format(Locale.ROOT, "%-32s %14.1f %14.0f  (+- %.1f%%)",
+                name, mean, 1e9 / mean, 100 * Math.sqrt(variance) / mean);
+        if (nodes > 0)
+            line += String.format(Locale.ROOT, "  %.0f nodes/op  %.0f nodes/s",
+                    (double) nodes / Math.max(ops, 1), nodes * 1e9 / Math.max(timed, 1));
+        System.out.println(line);
+    }
+
+    // Run the operation until the round time passes, at least once, and return the nanoseconds timed and the ops
+    private static long[] round(Operation operation, long roundTime)
+    {
+        long ops = 0;
+        long timed = 0;
+        long end = System.nanoTime() + roundTime * 1000000;
+        long now;
+        do
+        {
+            operation.setUp();
+            long start = System.nanoTime();
+            ops += operation.run();
+            now = System.nanoTime();
+            timed += now - start;
+        }
+        while (now < end);
+        return new long[] {timed, ops};
+    }
+}
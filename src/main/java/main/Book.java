@@ -0,0 +1,299 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opening book: moves of the positions of the opening, found by the position hash, each with a weight.
+ * A computer with a book plays one of the moves of a position at random by their weights, without a search.
+ * The book is built by self-play, where every root move is searched and one of the best moves is played,
+ * or imported from lines of moves. The file holds the entries sorted by hash and is mapped into memory,
+ * so a lookup is a binary search of it.
+ * Usage:
+ *   java main.Book generate length pawnRows games plies depth [file]
+ *   java main.Book import length pawnRows lines [file]
+ * A line of an imported file is moves from the start position, e.g. "c3-d4 f6-e5 d4xf6 ...", '#' starts a comment.
+ * @author Daniel Kanevsky
+ */
+final class Book {
+
+    // Read by the board and the engine at startup, from the working directory
+    static final String DEFAULT_FILE = "book.bin";
+
+    // File header: magic "DBK2", then the board length and the pawn rows of the book
+    private static final int MAGIC = 0x44424B32;
+    private static final int HEADER = 16;
+    // An entry: the position hash, the packed move and its weight
+    private static final int ENTRY = 20;
+
+    // Moves of self-play this close to the best one in centipawns are good enough for the book
+    private static final int MARGIN = 25;
+    // Seed of the self-play choices, so a book can be built again
+    private static final long SEED = 0xB00CL;
+
+    // Board size of the book
+    final int LENGTH;
+    final int PAWN_ROWS;
+    // The header, then the entries
+    private final ByteBuffer data;
+    private final int entries;
+
+    private Book(ByteBuffer data)
+    {
+        this.data = data;
+        LENGTH = data.getInt(4);
+        PAWN_ROWS = data.getInt(8);
+        entries = (data.limit() - HEADER) / ENTRY;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Lookup">
+    /**
+     * Map the book of a file into memory
+     * @param file: book written by generate or import
+     * @return the book
+     * @throws IOException if the file can't be read or isn't a book
+     */
+    static Book open(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.limit() < HEADER || data.getInt(0) != MAGIC || (data.limit() - HEADER) % ENTRY != 0)
+                throw new IOException("Not an opening book: " + file);
+            return new Book(data);
+        }
+    }
+
+    /**
+     * Open the book in the working directory, if one was built
+     * @return the book, null if there is none or it can't be read
+     */
+    static Book openDefault()
+    {
+        Path file = Paths.get(DEFAULT_FILE);
+        if (!Files.exists(file))
+            return null;
+        try {
+            return open(file);
+        } catch (IOException ex) {
+            Logger.getLogger(Book.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Choose a move of the position from the book, at random by the weights of its moves
+     * @param random: source of the choice
+     * @return the packed move, Move.NONE if the position is out of the book
+     */
+    long move(Position position, Random random)
+    {
+        if (position.LENGTH != LENGTH || position.PAWN_ROWS != PAWN_ROWS)
+            return Move.NONE;
+
+        int first = firstEntry(position.hash);
+        int total = 0;
+        int end = first;
+        for (; end < entries && hash(end) == position.hash; end++)
+            total += weight(end);
+        if (total == 0)
+            return Move.NONE;
+
+        long move = Move.NONE;
+        int pick = random.nextInt(total);
+        for (int i = first; i < end && move == Move.NONE; i++)
+        {
+            pick -= weight(i);
+            if (pick < 0)
+                move = data.getLong(HEADER + i * ENTRY + 8);
+        }
+        // Another position with the same hash would get a move it can't play
+        return isLegal(position, move) ? move : Move.NONE;
+    }
+
+    // Index of the first entry with a hash not below the hash, by binary search
+    private int firstEntry(long hash)
+    {
+        int low = 0, high = entries;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (hash(middle) < hash)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private long hash(int entry)
+    {
+        return data.getLong(HEADER + entry * ENTRY);
+    }
+
+    private int weight(int entry)
+    {
+        return data.getInt(HEADER + entry * ENTRY + 16);
+    }
+
+    private static boolean isLegal(Position position, long move)
+    {
+        for (long possible : position.generateMoves())
+            if (possible == move)
+                return true;
+        return false;
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Building">
+    /**
+     * Play games of self-play from the start position, adding the moves of their openings to the book.
+     * Every root move is searched, and one of those within MARGIN of the best is played at random,
+     * so the games branch into the good lines and the weights follow how often each move was chosen
+     * @param weights: weight of every move of every position, by hash, added to
+     * @param plies: moves of every game that go into the book
+     * @param depth: depth of the searches
+     */
+    static void generate(Map<Long, Map<Long, Integer>> weights, int length, int pawnRows, int games, int plies, int depth)
+    {
+        Computer computer = new Computer();
+        computer.threads = 1;
+        computer.depthMax = depth;
+        computer.timeBudget = 0;
+        Random random = new Random(SEED);
+        // The good moves of every position searched, a position of many games is searched once
+        Map<Long, long[]> goodMoves = new HashMap<>();
+
+        for (int game = 0; game < games; game++)
+        {
+            Position position = new Position(length, pawnRows);
+            position.setStartPosition();
+            for (int ply = 0; ply < plies; ply++)
+            {
+                long[] good = goodMoves.get(position.hash);
+                if (good == null)
+                {
+                    good = goodMoves(computer, position);
+                    goodMoves.put(position.hash, good);
+                }
+                if (good.length == 0)
+                    break;
+
+                long move = good[random.nextInt(good.length)];
+                weights.computeIfAbsent(position.hash, hash -> new TreeMap<>()).merge(move, 1, Integer::sum);
+                position.makeMove(move);
+            }
+            System.out.println("Game " + (game + 1) + ": " + weights.size() + " positions");
+        }
+    }
+
+    // The moves of the position within MARGIN of the best, by a search after every one of them
+    private static long[] goodMoves(Computer computer, Position position)
+    {
+        long[] moves = position.generateMoves();
+        int end = moves.length;
+        int[] values = new int[end];
+        int best = Computer.MIN_POS_VAL;
+        for (int i = 0; i < end; i++)
+        {
+            computer.position = new Position(position);
+            computer.position.makeMove(moves[i]);
+            // The value for black, turned to the value for the player of the move
+            values[i] = position.turn ? computer.evaluate() : -computer.evaluate();
+            best = Math.max(best, values[i]);
+        }
+
+        List<Long> good = new ArrayList<>();
+        for (int i = 0; i < end; i++)
+            if (values[i] >= best - MARGIN)
+                good.add(moves[i]);
+        return good.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Add the moves of lines from the start position to the book, every move of a line by weight 1
+     * @param weights: weight of every move of every position, by hash, added to
+     * @param lines: lines of moves in algebraic notation, '#' starts a comment
+     * @throws IllegalArgumentException on a move which isn't possible in its line
+     */
+    static void importLines(Map<Long, Map<Long, Integer>> weights, int length, int pawnRows, List<String> lines)
+    {
+        for (int number = 0; number < lines.size(); number++)
+        {
+            String line = lines.get(number);
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+
+            Position position = new Position(length, pawnRows);
+            position.setStartPosition();
+            for (String name : line.split("\\s+"))
+            {
+                long move = position.parseMove(name);
+                if (move == Move.NONE)
+                    throw new IllegalArgumentException("Illegal move " + name + " in line " + (number + 1));
+                weights.computeIfAbsent(position.hash, hash -> new TreeMap<>()).merge(move, 1, Integer::sum);
+                position.makeMove(move);
+            }
+        }
+    }
+
+    /**
+     * Write a book of the weights, sorted by hash for the binary search
+     */
+    static void write(Map<Long, Map<Long, Integer>> weights, int length, int pawnRows, Path file) throws IOException
+    {
+        int count = 0;
+        for (Map<Long, Integer> moves : weights.values())
+            count += moves.size();
+
+        ByteBuffer data = ByteBuffer.allocate(HEADER + count * ENTRY);
+        data.putInt(MAGIC).putInt(length).putInt(pawnRows).putInt(0);
+        for (Map.Entry<Long, Map<Long, Integer>> position : new TreeMap<>(weights).entrySet())
+            for (Map.Entry<Long, Integer> move : position.getValue().entrySet())
+                data.putLong(position.getKey()).putLong(move.getKey()).putInt(move.getValue());
+        Files.write(file, data.array());
+    }
+    //</editor-fold>
+
+    public static void main(String[] args) throws IOException
+    {
+        boolean isGenerate = args.length >= 6 && args[0].equals("generate");
+        boolean isImport = args.length >= 4 && args[0].equals("import");
+        if (!isGenerate && !isImport)
+        {
+            System.err.println("Usage: java main.Book generate length pawnRows games plies depth [file]");
+            System.err.println("       java main.Book import length pawnRows lines [file]");
+            System.exit(2);
+        }
+        int length = Integer.parseInt(args[1]);
+        int pawnRows = Integer.parseInt(args[2]);
+        int fileArg = isGenerate ? 6 : 4;
+        Path file = Paths.get(args.length > fileArg ? args[fileArg] : DEFAULT_FILE);
+
+        Map<Long, Map<Long, Integer>> weights = new HashMap<>();
+        if (isGenerate)
+            generate(weights, length, pawnRows, Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+        else
+            importLines(weights, length, pawnRows, Files.readAllLines(Paths.get(args[3])));
+        write(weights, length, pawnRows, file);
+        System.out.println("Written " + weights.size() + " positions to " + file);
+    }
+}
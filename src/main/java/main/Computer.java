@@ -1,183 +1,484 @@
 package main;
 
-import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * AI for playing Shashki (Russian Checkers)
+ * Searches a headless Position, so it never touches the Swing tiles.
+ * The board plays the singleton; every computer has settings and a table of its own,
+ * so several of them can play each other on different threads.
  * @author Daniel Kanevsky
  */
 class Computer {
     
-    private Computer(){}
-    
-    static class Move
-    {
-        int fromRow; // Row index of origin tile
-        int fromCol; // Col index of origin tile
-        int toRow; // Row index of destination tile
-        int toCol; // Col index of destination tile
-        int movesWithoutProgress; // Moves without progress before this move was played
-        boolean isCapture; // Is this move a capture?
-        TileColor capturedColor; // Color of captured piece
-        int capturedRow; // Row of captured piece
-        int capturedCol; // Col of captured piece
-        boolean wasOnStreak; // Was this move made as the part of streak
-        boolean wasPremotion; // Was this a premotion to a queen
-        boolean turn; // Whose turn is it? false - white, true - black
-        
-        Move(int fromRow, int fromCol, int toRow, int toCol, int movesWithoutProgress,
-                boolean isCapture, boolean wasOnStreak, boolean turn)
-        {
-            this.fromRow = fromRow;
-            this.fromCol = fromCol;
-            this.toRow = toRow;
-            this.toCol = toCol;
-            this.movesWithoutProgress = movesWithoutProgress;
-            this.isCapture = isCapture;
-            this.wasOnStreak = wasOnStreak;
-            this.turn = turn;
-            wasPremotion = false;
-        } 
-    }
-    
-    static int DEPTH_MAX;
-    static final float MIN_POS_VAL = -10000;
-    static final float MAX_POS_VAL =  10000;
+    Computer(){}
+    
+    // Scores are in centipawns, for black. A win now is MAX_POS_VAL, a win n plies away MAX_POS_VAL - n,
+    // so a faster win scores higher and a slower loss scores higher
+    static final int PAWN_VALUE = 100;
+    static final int MIN_POS_VAL = -30000;
+    static final int MAX_POS_VAL =  30000;
+    // Longest win the scores tell, any score closer to MAX_POS_VAL or MIN_POS_VAL is a win
+    private static final int MAX_WIN_PLIES = 1000;
+    // A win known from the tablebase, below the wins the search sees to their end
+    static final int TABLEBASE_WIN = MAX_POS_VAL - 2 * MAX_WIN_PLIES;
+    
+    // Memory budget of the transposition table unless set otherwise
+    static final int TABLE_MEGABYTES = 64;
+    
+    // Move ordering scores: the best move of the table, then premotions, then killers, then history
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int PREMOTION_SCORE = 1 << 29;
+    private static final int KILLER_SCORE = 1 << 28;
+    
+    // Half width of the first aspiration window around the value of the last iteration, in centipawns
+    private static final int ASPIRATION_WINDOW = 50;
+    
+    // Most capture plies searched after the horizon
+    private static final int QUIESCENCE_PLIES = 24;
+    
+    // Number of dark squares on the biggest board (12x12)
+    private static final int MAX_SQUARES = 72;
+    
+    // Threads of the helper searches, shared by all the computers
+    private static ExecutorService helperThreads;
     
     // Singleton instance
     static Computer comp = new Computer();
 
-    Damka board;
-    private Move moveToPlay; // The move which will be played
+    int depthMax; // Deepest iteration of the search
+    long timeBudget; // Thinking time of a move in milliseconds, 0 - search to depthMax
+    // Threads searching every move. The extra threads run helper searches of their own
+    // which fill the shared transposition table for the main one (Lazy SMP)
+    int threads = Runtime.getRuntime().availableProcessors();
+    Weights weights = new Weights(); // Weights of the static evaluation, replaced rather than changed
+    private PieceSquareTables scoreTables; // Piece-square tables of the weights and the last board size
+    private int tempoValue; // Weights of the terms which aren't by square, in centipawns
+    private int captureValue;
+    Tablebase tablebase; // Exact results of the endgames of a few queens, null - none
+    Book book; // Moves of the opening played without a search, null - none
+    private final Random random = new Random(); // Chooses between the moves of the book
+    
+    Position position; // The position searched
+    private long moveToPlay; // The move which will be played
+    private int rootValue; // Value of the position, by the last completed iteration
+    
+    private int depthLimit; // Horizon of the current iteration
+    private volatile long deadline; // System.nanoTime() at which the search stops, moved by ponderHit()
+    private long nodes; // Nodes visited by the search
+    private long helperNodes; // Nodes visited by the helpers of the search, counted once they stopped
+    private boolean aborted; // Did the time run out in the current iteration
     
-    Stack<Move> movesStack = new Stack<>();
+    private Computer[] helpers = new Computer[0]; // Helper searches, each with its own position and moves
+    private boolean isHelper;
+    private int firstDepth = 1; // Depth of the first iteration
+    private volatile boolean stopped; // Set to end the search, by stop() or by the main search of a helper
+    private boolean isSearchHandedOver; // A search was handed to another thread and hasn't started, guarded by this
+    private boolean isStopHandedOver; // stop() came before the search handed over started, guarded by this
     
-    // Generate all possible moves in the current position
-    private ArrayList<Move> generateMoves ()
+    // Thinking on the opponent's time (pondering), guarded by this
+    private boolean isPondering; // The ponder search waits for the opponent's move with its clock stopped
+    private boolean isPonderHit; // The opponent played the reply pondered
+    private long ponderHash; // Hash of the position pondered, after the expected reply
+    private long ponderStart; // System.nanoTime() at which pondering started
+    private long ponderedMove = Move.NONE; // Best move of the position pondered, once its search is over
+    private boolean isPonderSearch; // Is the search in progress a ponder search, only touched by the searching thread
+    
+    // Results of positions already searched, shared between searches
+    private TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES);
+    
+    // Move arena: the moves of every ply are moves[plyStart[ply] .. plyStart[ply + 1])
+    private long[] moves = new long[1024];
+    private int[] plyStart = new int[64];
+    private int ply; // Number of moves made since the root of the search
+    
+    private int[] scores = new int[1024]; // Ordering score of every move in the arena
+    private long[] killers = new long[128]; // Two quiet moves of every ply which caused a cutoff
+    private final int[] history = new int[2 * MAX_SQUARES * MAX_SQUARES]; // Cutoffs by side, origin and destination
+    
+    /**
+     * Generate all possible moves in the current position, after the moves of the previous plies.
+     * The arena only grows while warming up, the search itself allocates nothing.
+     * @return the index after the last move generated, the first one is at plyStart[ply]
+     */
+    private int generateMoves()
     {
-        ArrayList<Move> moves = new ArrayList<>();
-        TileColor playing1, playing2;
-        boolean isCapture = board.isForced;
-        
-        // If the board is on streak, generate the moves with the pawn/queen on streak.
-        if (board.isOnStreak)
+        if (ply + 1 == plyStart.length)
         {
-            for (int i = 0; i < board.LENGTH; i++)
-            {
-                for (int j = 1 - i%2; j < board.LENGTH; j+= 2)
-                {
-                    if (board.tiles[i][j].color == TileColor.RED)
-                    {
-                        moves.add(new Move(board.chosenPawnRow, board.chosenPawnCol, i, j, 0, true, true, board.turn));
-                    }
-                }
-            }
-            
-            return moves;
+            plyStart = Arrays.copyOf(plyStart, plyStart.length * 2);
+            killers = Arrays.copyOf(killers, plyStart.length * 2);
+            Arrays.fill(killers, plyStart.length, killers.length, Move.NONE);
         }
+        int start = plyStart[ply];
+        if (start + position.roomForMoves() > moves.length)
+            growArena(start + position.roomForMoves());
         
-        if (board.turn)
+        int end = position.generateMoves(moves, start);
+        // More captures than the room of a position, generated again once they fit
+        if (end > moves.length)
         {
-            playing1 = TileColor.BLACK_PAWN;
-            playing2 = TileColor.BLACK_QUEEN;
+            growArena(end);
+            end = position.generateMoves(moves, start);
         }
-        else
+        plyStart[ply + 1] = end;
+        return end;
+    }
+    
+    private void growArena(int length)
+    {
+        moves = Arrays.copyOf(moves, Math.max(moves.length * 2, length));
+        scores = Arrays.copyOf(scores, moves.length);
+    }
+    
+    // Swap the move of the key (see Move.key) to the front of the moves of the current ply, if it's there
+    private void tryFirst(int key, int end)
+    {
+        for (int i = plyStart[ply]; i < end; i++)
         {
-            playing1 = TileColor.WHITE_PAWN;
-            playing2 = TileColor.WHITE_QUEEN;
+            if (Move.key(moves[i]) == key)
+            {
+                long move = moves[i];
+                moves[i] = moves[plyStart[ply]];
+                moves[plyStart[ply]] = move;
+                return;
+            }
         }
+    }
+    
+    /**
+     * Score the moves of the current ply for the order they are searched in:
+     * the best move found by a previous search, then premotions,
+     * then the killer moves of the ply, then the rest by their history of cutoffs.
+     * @param end : index after the last move of the ply
+     * @param hashKey : key of the best move stored in the table, that of Move.NONE if there is none
+     */
+    private void scoreMoves(int end, int hashKey)
+    {
+        int side = position.turn ? 1 : 0;
+        for (int i = plyStart[ply]; i < end; i++)
+        {
+            long move = moves[i];
+            if (Move.key(move) == hashKey)
+                scores[i] = HASH_MOVE_SCORE;
+            else if (Move.isPremotion(move))
+                scores[i] = PREMOTION_SCORE;
+            else if (move == killers[ply << 1])
+                scores[i] = KILLER_SCORE + 1;
+            else if (move == killers[ply << 1 | 1])
+                scores[i] = KILLER_SCORE;
+            else
+                scores[i] = history[(side * MAX_SQUARES + Move.from(move)) * MAX_SQUARES + Move.to(move)];
+        }
+    }
+    
+    // Swap the best scored move left into index i, and return it
+    private long nextMove(int i, int end)
+    {
+        int best = i;
+        for (int j = i + 1; j < end; j++)
+            if (scores[j] > scores[best])
+                best = j;
+        
+        long move = moves[best];
+        moves[best] = moves[i];
+        moves[i] = move;
+        int score = scores[best];
+        scores[best] = scores[i];
+        scores[i] = score;
+        return move;
+    }
+    
+    // Remember a quiet move which caused a cutoff, for the ply and for its history
+    private void rememberCutoff(long move, int depth)
+    {
+        if (Move.isCapture(move))
+            return;
         
-        
-        
-        for (int i = 0; i < board.LENGTH; i++) {
-            for (int j = 1 - i % 2; j < board.LENGTH; j += 2) {
-                if (board.tiles[i][j].color == playing1 ||
-                    board.tiles[i][j].color == playing2) 
-                {
-                    board.chosenPawnRow = i;
-                    board.chosenPawnCol = j;
-                    
-                    // Turn the red squares for the current tile
-                    if (board.tiles[i][j].color == playing1)
-                    {
-                        if (board.turn)
-                            board.tiles[i][j].setColor(TileColor.BLACK_PAWN_CHOSEN);
-                        else
-                            board.tiles[i][j].setColor(TileColor.WHITE_PAWN_CHOSEN);
-                        board.turnRedPawnSquaresOn();
-                        if (board.turn)
-                            board.tiles[i][j].setColor(TileColor.BLACK_PAWN);
-                        else
-                            board.tiles[i][j].setColor(TileColor.WHITE_PAWN);
-                    }
-                    else
-                    {
-                        if (board.turn)
-                            board.tiles[i][j].setColor(TileColor.BLACK_QUEEN_CHOSEN);
-                        else
-                            board.tiles[i][j].setColor(TileColor.WHITE_QUEEN_CHOSEN);
-                        board.turnRedQueenSquaresOn();
-                        if (board.turn)
-                            board.tiles[i][j].setColor(TileColor.BLACK_QUEEN);
-                        else
-                            board.tiles[i][j].setColor(TileColor.WHITE_QUEEN);
-                    }
-                        
-                    // Add the moves for the current tile
-                    for (int k = 0; k < board.LENGTH; k++)
-                    {
-                        for (int l = 1 - k%2; l < board.LENGTH; l += 2)
-                        {
-                            if (board.tiles[k][l].color == TileColor.RED)
-                            {
-                                board.tiles[k][l].setColor(TileColor.BLACK);
-                                moves.add(new Move(i, j, k, l, board.movesWithoutProgress, isCapture, false, board.turn));
-                            }
-                        }
-                    }
-                }
-            }
+        if (killers[ply << 1] != move)
+        {
+            killers[ply << 1 | 1] = killers[ply << 1];
+            killers[ply << 1] = move;
         }
         
-        return moves;
+        int index = ((position.turn ? 1 : 0) * MAX_SQUARES + Move.from(move)) * MAX_SQUARES + Move.to(move);
+        history[index] += depth * depth;
+        // Keep the history under the killers, the older cutoffs fade
+        if (history[index] >= KILLER_SCORE)
+            for (int i = 0; i < history.length; i++)
+                history[i] >>= 1;
+    }
+    
+    /**
+     * Replace the transposition table by an empty one
+     * @param megabytes : memory budget of the table
+     */
+    void setTableSize(int megabytes)
+    {
+        table = new TranspositionTable(megabytes);
+    }
+    
+    /**
+     * Forget every position searched so far
+     */
+    void clearTable()
+    {
+        table.clear();
+    }
+    
+    /**
+     * @return the number of nodes visited by the last search, its helpers included
+     */
+    long nodes()
+    {
+        return nodes + helperNodes;
+    }
+    
+    /**
+     * @return the value of the position for black in centipawns, by the last completed iteration of the last search
+     */
+    int value()
+    {
+        return rootValue;
     }
      
     private void findBestMove()
     {
-        ArrayList<Move> possibilities = generateMoves();
-        if (possibilities.isEmpty())
+        int end = generateMoves();
+        if (end == 0)
             return;
         
         // the Move to play is the first possible move as a default option
-        moveToPlay = possibilities.get(0);
+        moveToPlay = moves[0];
         
         // If there is only one move to make -> do it!
-        if (possibilities.size() == 1)
+        if (end == 1)
             return;
         
-        float moveValue, bestValue = MIN_POS_VAL;
-        boolean isOver = false; // No need to look for more moves if a win found
+        searchIteratively();
+    }
+    
+    /**
+     * Iterative deepening: search the root moves with the horizon at depth 1, 2, 3...
+     * until the time budget runs out or depthMax is reached.
+     * The best move of every iteration is searched first in the next one,
+     * within an aspiration window around its value which widens whenever the value falls outside.
+     * moveToPlay and rootValue are those of the last completed iteration.
+     */
+    private void searchIteratively()
+    {
+        int end = generateMoves();
+        moveToPlay = end == 0 ? Move.NONE : moves[0];
+        rootValue = position.turn ? MIN_POS_VAL : MAX_POS_VAL; // No moves = loss now
+        if (end == 0)
+            return;
+        
+        nodes = 0;
+        helperNodes = 0;
+        aborted = false;
+        useScoreTables();
+        Arrays.fill(killers, Move.NONE);
+        Arrays.fill(history, 0);
+        startClock();
+        
+        long entry = table.probe(position.hash);
+        if (entry != 0)
+            tryFirst(TranspositionTable.moveKey(entry), end);
+        
+        Future<?>[] running = isHelper ? null : startHelpers();
+        for (depthLimit = firstDepth; depthLimit <= depthMax; depthLimit++)
+        {
+            int delta = ASPIRATION_WINDOW;
+            int alpha = MIN_POS_VAL, beta = MAX_POS_VAL;
+            if (depthLimit > firstDepth && !isWin(rootValue))
+            {
+                alpha = rootValue - delta;
+                beta = rootValue + delta;
+            }
+            
+            int value;
+            while (true)
+            {
+                tryFirst(Move.key(moveToPlay), end);
+                value = searchRoot(end, alpha, beta);
+                if (aborted)
+                    break;
+                delta *= 4;
+                if (value <= alpha && alpha > MIN_POS_VAL)
+                    alpha = Math.max(value - delta, MIN_POS_VAL);
+                else if (value >= beta && beta < MAX_POS_VAL)
+                    beta = Math.min(value + delta, MAX_POS_VAL);
+                else
+                    break;
+            }
+            if (aborted)
+                break;
+            rootValue = value;
+            
+            // No need to look deeper if the game is decided
+            if (isWin(rootValue))
+                break;
+        }
+        if (running != null)
+            stopHelpers(running);
+    }
+    
+    // Start the clock of a search. A ponder search's clock waits for ponderHit()
+    private synchronized void startClock()
+    {
+        boolean isClockStopped = isPonderSearch && isPondering;
+        deadline = timeBudget > 0 && !isClockStopped ? System.nanoTime() + timeBudget * 1000000 : Long.MAX_VALUE;
+    }
+    
+    /**
+     * Start threads - 1 helper searches of the position, with the settings of this computer.
+     * Every helper searches a copy of the position, half of them starting one ply deeper,
+     * so they reach different parts of the tree and share them through the table.
+     * @return : the running helpers, null if there are none
+     */
+    private Future<?>[] startHelpers()
+    {
+        if (threads <= 1)
+            return null;
+        
+        synchronized (Computer.class)
+        {
+            if (helperThreads == null)
+            {
+                helperThreads = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "Computer helper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        
+        if (helpers.length != threads - 1)
+        {
+            helpers = new Computer[threads - 1];
+            for (int i = 0; i < helpers.length; i++)
+            {
+                helpers[i] = new Computer();
+                helpers[i].isHelper = true;
+                helpers[i].firstDepth = 1 + (i + 1) % 2;
+            }
+        }
+        
+        Future<?>[] running = new Future<?>[helpers.length];
+        for (int i = 0; i < helpers.length; i++)
+        {
+            Computer helper = helpers[i];
+            helper.position = new Position(position);
+            helper.table = table;
+            helper.depthMax = depthMax;
+            // Helpers of a ponder search run until it stops them
+            helper.timeBudget = isPonderSearch ? 0 : timeBudget;
+            helper.weights = weights;
+            helper.tablebase = tablebase;
+            helper.stopped = false;
+            running[i] = helperThreads.submit(helper::searchIteratively);
+        }
+        return running;
+    }
+    
+    // Stop the helper searches and wait for them to finish
+    private void stopHelpers(Future<?>[] running)
+    {
+        for (Computer helper : helpers)
+            helper.stopped = true;
+        for (int i = 0; i < running.length; i++)
+        {
+            try {
+                running[i].get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(Computer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            helperNodes += helpers[i].nodes;
+        }
+    }
+    
+    /**
+     * Search every root move with the horizon at depthLimit, within the window.
+     * moveToPlay becomes the best move, unless no move reached the window
+     * @param end : index after the last root move
+     * @param alpha : best position value guaranteed for Max
+     * @param beta : best position value guaranteed for Min
+     * @return : value of the best move, only a bound of it if it's outside the window.
+     *           0 if the time ran out before the iteration was completed
+     */
+    private int searchRoot(int end, int alpha, int beta)
+    {
+        boolean Max = position.turn; // black is Max
+        int alphaOrig = alpha, betaOrig = beta;
+        int moveValue, bestValue = Max ? MIN_POS_VAL : MAX_POS_VAL;
+        long bestMove = moves[0];
         
-        for (Move possibility : possibilities)
+        for (int i = 0; i < end; i++)
         {
-            movesStack.push(possibility);
-            makeMove(possibility);
-            // evaluate the position with the move made, the best value so far is the alpha value
-            moveValue = miniMaxAlphaBeta(1, board.isOnStreak, bestValue, MAX_POS_VAL);
+            long possibility = moves[i];
+            position.makeMove(possibility);
+            ply++;
+            moveValue = searchMove(0, Max, alpha, beta, i == 0);
+            ply--;
+            position.undoMove(possibility); // return the board to it's previous state
+            if (aborted)
+                return 0;
             
-            if (moveValue > bestValue)
+            if (Max ? moveValue > bestValue : moveValue < bestValue)
             {
                 bestValue = moveValue;
-                moveToPlay = possibility;
-                if (bestValue == MAX_POS_VAL)
-                    isOver = true;
+                bestMove = possibility;
+                if (Max && bestValue > alpha)
+                    alpha = bestValue;
+                else if (!Max && bestValue < beta)
+                    beta = bestValue;
             }
-            undoMove(movesStack.pop()); // return the board to it's previous state
-            if (isOver)
+            // Above the window, or a win by this move: no need to look for more moves
+            if (alpha >= beta || bestValue == (Max ? MAX_POS_VAL - 1 : MIN_POS_VAL + 1))
                 break;
         }
         
+        // Below the window every move is only known to be worse, the best move so far stays
+        if (Max ? bestValue > alphaOrig : bestValue < betaOrig)
+            moveToPlay = bestMove;
+        int bound;
+        if (bestValue <= alphaOrig)
+            bound = TranspositionTable.UPPER;
+        else if (bestValue >= betaOrig)
+            bound = TranspositionTable.LOWER;
+        else
+            bound = TranspositionTable.EXACT;
+        table.store(position.hash, depthLimit, bound, toTable(bestValue), moveToPlay);
+        return bestValue;
+    }
+    
+    /**
+     * Principal variation search of the position after a move.
+     * A move after the first one of a position is expected to be worse, so it's searched
+     * with a null window which only proves it, and again with the whole window if it isn't
+     * @param currentDepth : the Depth of the position the move was made in
+     * @param Max : true -> Max made the move ~~~ false -> Min made the move
+     * @param isFirst : is this the first move searched in the position
+     * @return : value of the position after the move
+     */
+    private int searchMove(int currentDepth, boolean Max, int alpha, int beta, boolean isFirst)
+    {
+        int childDepth = currentDepth + 1;
+        if (isFirst)
+            return miniMaxAlphaBeta(childDepth, position.turn, alpha, beta);
+        
+        int moveValue = Max
+                ? miniMaxAlphaBeta(childDepth, position.turn, alpha, alpha + 1)
+                : miniMaxAlphaBeta(childDepth, position.turn, beta - 1, beta);
+        if (moveValue > alpha && moveValue < beta && !aborted)
+            moveValue = miniMaxAlphaBeta(childDepth, position.turn, alpha, beta);
+        return moveValue;
     }
     
     /**
@@ -189,304 +490,491 @@ class Computer {
      * @param beta : beta value - > best position value guaranteed for Min in the current node
      * @return : position Value
      */
-    float miniMaxAlphaBeta(int currentDepth, boolean Max, float alpha, float beta)
+    private int miniMaxAlphaBeta(int currentDepth, boolean Max, int alpha, int beta)
     {
-        if (board.movesWithoutProgress == Damka.MOVES_FOR_DRAW)
+        // Check the clock every 1024 nodes, the result of an aborted search is never used
+        if ((++nodes & 1023) == 0 && (stopped || System.nanoTime() > deadline))
+            aborted = true;
+        if (aborted)
             return 0;
-        if (currentDepth == DEPTH_MAX)
-            return evaluatePosition();
-        
-        float positionValue; // value of position = best moveValue so far
-        float moveValue; // used as a 'temp' variable' to determine value of each move
-        ArrayList<Move> possibilities = generateMoves();
-        int sign;
         
-        if (Max)
-        {
-            positionValue = MIN_POS_VAL;
-            sign = 1;
-        }
-        else
+        if (position.movesWithoutProgress == Position.MOVES_FOR_DRAW)
+            return 0;
+        if (tablebase != null && tablebase.covers(position))
+            return tablebaseValue();
+        if (currentDepth >= depthLimit)
+            return quiescence(0, Max, alpha, beta);
+        
+        // Use the result of this position if it was already searched deep enough
+        int depth = depthLimit - currentDepth;
+        int alphaOrig = alpha, betaOrig = beta;
+        long entry = table.probe(position.hash);
+        if (entry != 0 && TranspositionTable.depth(entry) >= depth)
         {
-            positionValue = MAX_POS_VAL;
-            sign = -1;
+            int score = fromTable(TranspositionTable.score(entry));
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT)
+                return score;
+            if (bound == TranspositionTable.LOWER && score > alpha)
+                alpha = score;
+            else if (bound == TranspositionTable.UPPER && score < beta)
+                beta = score;
+            if (alpha >= beta)
+                return score;
         }
         
+        int moveValue; // used as a 'temp' variable' to determine value of each move
+        long bestMove = Move.NONE;
+        int end = generateMoves();
+        
+        // The best move of a previous search is likely to be the best again
+        scoreMoves(end, entry != 0 ? TranspositionTable.moveKey(entry) : Move.key(Move.NONE));
+        
+        // value of position = best moveValue so far. Worse than any move, the loss of a player who can't move
+        int positionValue = Max ? MIN_POS_VAL + ply : MAX_POS_VAL - ply;
+        
         // Choose the best move from the possible moves recursively
-        for (Move possibility : possibilities)
+        for (int i = plyStart[ply]; i < end; i++)
         {
-            movesStack.push(possibility);
-            makeMove(possibility);
-            if (board.isOnStreak)
-                moveValue = miniMaxAlphaBeta(currentDepth, Max, alpha, beta);
-            else
-                moveValue = miniMaxAlphaBeta(currentDepth+1, !Max, alpha, beta);
-            if (Math.signum(moveValue - positionValue) == sign)
+            long possibility = nextMove(i, end);
+            position.makeMove(possibility);
+            ply++;
+            moveValue = searchMove(currentDepth, Max, alpha, beta, i == plyStart[ply - 1]);
+            ply--;
+            if (Max ? moveValue > positionValue : moveValue < positionValue)
+            {
                 positionValue = moveValue;
+                bestMove = possibility;
+            }
             
             if (Max && positionValue > alpha)
                 alpha = positionValue;
             else if (!Max && positionValue < beta)
                 beta = positionValue;
             
-            undoMove(movesStack.pop());
+            position.undoMove(possibility);
+            if (aborted)
+                return 0;
             // Alpha-Beta Purning!!!
             if (alpha >= beta)
-               break;
-        }
-        
-        return positionValue;
-    }
-
-    private void makeMove(Move move)
-    {
-        board.chosenPawnRow = move.fromRow;
-        board.chosenPawnCol = move.fromCol;
-        DamkaPawn originTile = board.tiles[move.fromRow][move.fromCol];
-        DamkaPawn destinationTile = board.tiles[move.toRow][move.toCol];
-        
-        // set the pawn/queen as chosen if isn't already
-        if (originTile.color == TileColor.WHITE_PAWN)
-            originTile.setColor(TileColor.WHITE_PAWN_CHOSEN);
-        else if (originTile.color == TileColor.BLACK_PAWN)
-            originTile.setColor(TileColor.BLACK_PAWN_CHOSEN);
-        else if (originTile.color == TileColor.WHITE_QUEEN)
-            originTile.setColor(TileColor.WHITE_QUEEN_CHOSEN);
-        else if (originTile.color == TileColor.BLACK_QUEEN)
-            originTile.setColor(TileColor.BLACK_QUEEN_CHOSEN);
-        
-        if (!move.isCapture)
-        {
-            if (originTile.color == TileColor.WHITE_PAWN_CHOSEN ||
-                    originTile.color == TileColor.BLACK_PAWN_CHOSEN)
-                board.movePawn(destinationTile);
-            else
-                board.moveQueen(destinationTile);
+            {
+                rememberCutoff(possibility, depth);
+                break;
+            }
         }
-        else // Forced to play = capture
-            board.Capture(destinationTile);
         
+        int bound;
+        if (positionValue <= alphaOrig)
+            bound = TranspositionTable.UPPER;
+        else if (positionValue >= betaOrig)
+            bound = TranspositionTable.LOWER;
+        else
+            bound = TranspositionTable.EXACT;
+        table.store(position.hash, depth, bound, toTable(positionValue), bestMove);
         
+        return positionValue;
     }
     
-    private void undoMove(Move move)
+    /**
+     * Search the captures left after the horizon, so a position is never evaluated
+     * in the middle of an exchange. A player who isn't forced to capture may "stand pat"
+     * on the static evaluation; a player who is forced can't, so all captures are searched.
+     * @param qPly : capture plies searched after the horizon so far, at most QUIESCENCE_PLIES
+     * @param Max : true -> Max is playing ~~~ false -> Min is playing
+     * @param alpha : best position value guaranteed for Max
+     * @param beta : best position value guaranteed for Min
+     * @return : position Value
+     */
+    private int quiescence(int qPly, boolean Max, int alpha, int beta)
     {
-        board.movesWithoutProgress = move.movesWithoutProgress;
-        TileColor deadTileColor;
-        board.turnRedSquaresOff();
-        if (!board.isOnStreak && move.wasOnStreak)
+        if (tablebase != null && tablebase.covers(position))
+            return tablebaseValue();
+        if (!position.isForced || qPly == QUIESCENCE_PLIES)
+            return evaluatePosition();
+        
+        if ((++nodes & 1023) == 0 && (stopped || System.nanoTime() > deadline))
+            aborted = true;
+        if (aborted)
+            return 0;
+        
+        int positionValue = Max ? MIN_POS_VAL : MAX_POS_VAL; // value of position = best moveValue so far
+        int moveValue;
+        int end = generateMoves();
+        
+        for (int i = plyStart[ply]; i < end; i++)
         {
+            long possibility = moves[i];
+            position.makeMove(possibility);
+            ply++;
+            moveValue = quiescence(qPly + 1, position.turn, alpha, beta);
+            ply--;
+            position.undoMove(possibility);
+            if (aborted)
+                return 0;
             
-            if (move.turn)
-                deadTileColor = TileColor.DEAD_WHITE;
-            else
-                deadTileColor = TileColor.DEAD_BLACK;
-            
-            Stack<Move> temp = new Stack<>();
-            while(!movesStack.isEmpty() && movesStack.peek().isCapture && movesStack.peek().turn)
-            {
-                Move prevMove = movesStack.pop();
-                temp.push(prevMove);
-                board.tiles[prevMove.capturedRow][prevMove.capturedCol].setColor(deadTileColor);
-            }
-            
-            while (!temp.isEmpty())
-                movesStack.push(temp.pop());
+            if (Max ? moveValue > positionValue : moveValue < positionValue)
+                positionValue = moveValue;
+            if (Max && positionValue > alpha)
+                alpha = positionValue;
+            else if (!Max && positionValue < beta)
+                beta = positionValue;
+            if (alpha >= beta)
+                break;
         }
-        DamkaPawn originTile = board.tiles[move.fromRow][move.fromCol];
-        DamkaPawn destinationTile = board.tiles[move.toRow][move.toCol];
-        int destColor = destinationTile.color.ordinal();
         
-        if (!board.isOnStreak && move.wasOnStreak)
-            destinationTile.setColor(TileColor.RED);
-        else
-            destinationTile.setColor(TileColor.BLACK);
-        
-        
-        board.isOnStreak = move.wasOnStreak;
-        board.isForced = move.isCapture;
-        board.turn = move.turn;
-        
-        if (!move.wasOnStreak &&
-            (destColor == TileColor.WHITE_PAWN_CHOSEN.ordinal() ||
-            destColor == TileColor.BLACK_PAWN_CHOSEN.ordinal() ||
-            destColor == TileColor.WHITE_QUEEN_CHOSEN.ordinal() ||
-            destColor == TileColor.BLACK_QUEEN_CHOSEN.ordinal()))
-            destColor -= 2;
-        if (move.wasOnStreak &&
-            (destColor == TileColor.WHITE_PAWN.ordinal() ||
-            destColor == TileColor.BLACK_PAWN.ordinal() ||
-            destColor == TileColor.WHITE_QUEEN.ordinal() ||
-            destColor == TileColor.BLACK_QUEEN.ordinal()))
-            destColor += 2;
-        originTile.setColor(TileColor.values()[destColor]);
-        
-        if (move.wasPremotion)
-        {
-            if (originTile.color == TileColor.WHITE_QUEEN ||
-                originTile.color == TileColor.WHITE_QUEEN_CHOSEN)
-            {
-                board.whiteQueens--;
-                originTile.setColor(TileColor.WHITE_PAWN);
-            }
-            else
-            {
-                board.blackQueens--;
-                originTile.setColor(TileColor.BLACK_PAWN);
-            }
-        }
+        return positionValue;
+    }
     
-        if (move.isCapture)
-        {
-            board.tiles[move.capturedRow][move.capturedCol].setColor(move.capturedColor);
-            if (move.turn)
-            {
-                board.whitePawnsLeft++;
-                if (move.capturedColor == TileColor.WHITE_QUEEN)
-                    board.whiteQueens++;
-            }
-                
-            else
-            {
-                board.blackPawnsLeft++;
-                if (move.capturedColor == TileColor.BLACK_QUEEN)
-                    board.blackQueens++;
-            }
-        }
-        
-        
-        if (move.wasOnStreak)
+    /**
+     * The value of a position in the tablebase. A win is worth more the more pieces the winner is up
+     * and the sooner it captures, so the search keeps making progress towards it
+     * @return : position value for black in centipawns, a win around TABLEBASE_WIN
+     */
+    private int tablebaseValue()
+    {
+        int plies = tablebase.probe(position);
+        if (plies == 0)
+            return 0;
+        int material = PAWN_VALUE * (position.blackPawnsLeft - position.whitePawnsLeft);
+        // plies > 0 is a win of the player to move
+        boolean isBlackWin = plies > 0 == position.turn;
+        return isBlackWin ? TABLEBASE_WIN + material - Math.abs(plies) : -TABLEBASE_WIN + material + Math.abs(plies);
+    }
+    
+    // Make the position sum the piece-square values of this computer, built on the first use of a board size
+    private void useScoreTables()
+    {
+        if (scoreTables == null || !scoreTables.fits(position, weights))
         {
-            board.isPawnChosen = true;
-            board.chosenPawnRow = move.fromRow;
-            board.chosenPawnCol = move.fromCol;
-            
-            if (originTile.color == TileColor.BLACK_PAWN ||
-                originTile.color == TileColor.WHITE_PAWN)
-                board.turnRedPawnSquaresOn();
-            else
-                board.turnRedQueenSquaresOn();
+            scoreTables = new PieceSquareTables(position.LENGTH, position.PAWN_ROWS, weights);
+            tempoValue = weights.centipawns(Weights.TEMPO);
+            captureValue = weights.centipawns(Weights.CAPTURE);
         }
-        else
-            board.isPawnChosen = false;
+        if (position.scoreTables != scoreTables)
+            position.setScoreTables(scoreTables);
     }
     
-    // Evaluate position in static manner.
-    private float evaluatePosition()
+    // Is the score a win of either player
+    static boolean isWin(int score)
     {
-        boolean isStartGame = board.whitePawnsLeft + board.blackPawnsLeft > board.PAWN_ROWS*board.LENGTH/3;
-        
-        if (board.whitePawnsLeft == 0)
-            return MAX_POS_VAL;
-        if (board.blackPawnsLeft == 0)
-            return MIN_POS_VAL;
+        return score > MAX_POS_VAL - MAX_WIN_PLIES || score < MIN_POS_VAL + MAX_WIN_PLIES;
+    }
+    
+    // Is the score a win known from the tablebase, its distance isn't
+    static boolean isTablebaseWin(int score)
+    {
+        return !isWin(score) && Math.abs(score) > TABLEBASE_WIN - MAX_WIN_PLIES;
+    }
+    
+    // A win is stored in the table as its distance from the position, and read back as its distance from the root
+    private int toTable(int score)
+    {
+        if (!isWin(score))
+            return score;
+        return score > 0 ? score + ply : score - ply;
+    }
+    
+    private int fromTable(int score)
+    {
+        if (!isWin(score))
+            return score;
+        return score > 0 ? score - ply : score + ply;
+    }
+    
+    /**
+     * Evaluate position in static manner, by the weights of this computer.
+     * The sums of the piece-square tables are kept by make/unmake, so only a small army is ever scanned
+     * (for a stalemate). With assertions on (-ea) every evaluation is checked against a rescan
+     * @return : position value for black in centipawns, a win as MAX_POS_VAL - ply
+     */
+    int evaluatePosition()
+    {
+        if (position.scoreTables == null || position.scoreTables != scoreTables)
+            useScoreTables();
+        boolean isStartGame = position.whitePawnsLeft + position.blackPawnsLeft > position.PAWN_ROWS*position.LENGTH/3;
         
+        if (position.whitePawnsLeft == 0)
+            return MAX_POS_VAL - ply;
+        if (position.blackPawnsLeft == 0)
+            return MIN_POS_VAL + ply;
         
-        float posVal = board.blackPawnsLeft - board.whitePawnsLeft;
-        posVal += 1.1*board.blackQueens;
-        posVal -= 1.1*board.whiteQueens;
         
-        // A queen has a higher value before the endgame
-        if (isStartGame)
-        {
-            posVal += 0.5*board.blackQueens;
-            posVal -= 0.5*board.whiteQueens;
-        }
+        // The material and the positional terms, by the piece-square tables
+        int posVal = isStartGame ? position.openingScore : position.endgameScore;
         
-        if (board.turn)
+        if (position.turn)
         {
-            posVal += 0.25;
+            posVal += tempoValue;
             
             // if the position is forced than a capture exists, usually good
-            if (board.isForced)
-                posVal+= 0.35;
+            if (position.isForced)
+                posVal+= captureValue;
             // check for a loss
             else
             {
-                if (board.whitePawnsLeft <= Damka.MAX_PAWNS_IN_STALEMATE &&
-                !board.canPlay(TileColor.BLACK_PAWN,
-                         TileColor.BLACK_QUEEN))
-                    return MIN_POS_VAL;
+                if (position.whitePawnsLeft <= Position.MAX_PAWNS_IN_STALEMATE &&
+                !position.canPlay())
+                    return MIN_POS_VAL + ply;
             }
         }
         else
         {
-            posVal -= 0.25;
+            posVal -= tempoValue;
             // if the position is forced than a capture exists, usually good (for white)
-            if (board.isForced)
-                posVal -= 0.35;
+            if (position.isForced)
+                posVal -= captureValue;
             // check for a loss (for white)
             else
             {
-                if (board.whitePawnsLeft <= Damka.MAX_PAWNS_IN_STALEMATE &&
-                !board.canPlay(TileColor.WHITE_PAWN,
-                         TileColor.WHITE_QUEEN))
-                    return MAX_POS_VAL;
+                if (position.whitePawnsLeft <= Position.MAX_PAWNS_IN_STALEMATE &&
+                !position.canPlay())
+                    return MAX_POS_VAL - ply;
             }
         }
         
-        // check for black pawns in white territory
-        for (int i = board.LENGTH - 3; i < board.LENGTH - 1; i++) {
-            for (int j = 1 - i % 2; j < board.LENGTH; j += 2) {
-                if (board.tiles[i][j].color == TileColor.BLACK_PAWN)
-                {
-                    // bad in start of the game
-                    if (isStartGame)
-                        posVal -= 0.15;
-                    // good in the end of the game
-                    else
-                        posVal += 0.25;
-                }
+        assert position.areCountsConsistent() && posVal == evaluatePositionByRescan() : position.toFen();
+        return posVal;
+    }
+    
+    // The static evaluation by scanning the rows, as it was before the counts were kept.
+    // Slow, only a consistency check of evaluatePosition
+    private int evaluatePositionByRescan()
+    {
+        if (position.whitePawnsLeft == 0)
+            return MAX_POS_VAL - ply;
+        if (position.blackPawnsLeft == 0)
+            return MIN_POS_VAL + ply;
+        
+        // check for a loss of the player to move
+        if (!position.isForced && position.whitePawnsLeft <= Position.MAX_PAWNS_IN_STALEMATE && !position.canPlay())
+            return position.turn ? MIN_POS_VAL + ply : MAX_POS_VAL - ply;
+        
+        int[] terms = new int[Weights.NAMES.length];
+        int posVal = PAWN_VALUE*countTerms(position, terms);
+        for (int term = 0; term < terms.length; term++)
+            posVal += weights.centipawns(term)*terms[term];
+        return posVal;
+    }
+    
+    /**
+     * Count the terms of the static evaluation in the position, for black less for white.
+     * The value of the position is PAWN_VALUE for every piece and the weight of every term
+     * times its count, unless it's won or lost
+     * @param terms : the count of every term, by the indices of Weights, written to
+     * @return : the pieces of black less the pieces of white
+     */
+    static int countTerms(Position position, int[] terms)
+    {
+        Arrays.fill(terms, 0);
+        boolean isStartGame = position.whitePawnsLeft + position.blackPawnsLeft > position.PAWN_ROWS*position.LENGTH/3;
+        
+        terms[Weights.QUEEN] = position.blackQueens - position.whiteQueens;
+        // A queen has a higher value before the endgame
+        if (isStartGame)
+            terms[Weights.OPENING_QUEEN] = position.blackQueens - position.whiteQueens;
+        
+        terms[Weights.TEMPO] = position.turn ? 1 : -1;
+        // if the position is forced than a capture exists, usually good (for the player to move)
+        if (position.isForced)
+            terms[Weights.CAPTURE] = position.turn ? 1 : -1;
+        
+        // check for black pawns in white territory, bad in start of the game and good in the end of the game
+        int advancedPawnTerm = isStartGame ? Weights.OPENING_ADVANCED_PAWN : Weights.ENDGAME_ADVANCED_PAWN;
+        for (int i = position.LENGTH - 3; i < position.LENGTH - 1; i++) {
+            for (int j = 1 - i % 2; j < position.LENGTH; j += 2) {
+                if (position.pieceAt(i, j) == Position.BLACK_PAWN)
+                    terms[advancedPawnTerm]++;
             }
         }
 
         // check for white pawns in black territory
         for (int i = 1; i < 3; i++) {
-            for (int j = 1 - (i % 2); j < board.LENGTH; j += 2) {
-                if (board.tiles[i][j].color == TileColor.WHITE_PAWN)
-                {
-                    // bad in start of the game (for white)
-                    if (isStartGame)
-                        posVal += 0.15;
-                    // good in the end of the game (for white)
-                    else
-                        posVal -= 0.25;
-                }
+            for (int j = 1 - (i % 2); j < position.LENGTH; j += 2) {
+                if (position.pieceAt(i, j) == Position.WHITE_PAWN)
+                    terms[advancedPawnTerm]--;
             }
         }
         
         // check for pawns in back-most and front-most rows at start-game
         if (isStartGame)
         {
-            for (int i = 1; i < board.LENGTH; i+= 2)
-                if (board.tiles[0][i].color == TileColor.BLACK_PAWN)
-                    posVal += 0.2;
+            for (int i = 1; i < position.LENGTH; i+= 2)
+                if (position.pieceAt(0, i) == Position.BLACK_PAWN)
+                    terms[Weights.BACK_ROW_PAWN]++;
             
-            for (int i = board.LENGTH % 2; i < board.LENGTH; i+= 2)
-                if (board.tiles[board.LENGTH - 1][i].color == TileColor.WHITE_PAWN)
-                    posVal -= 0.2;
+            for (int i = position.LENGTH % 2; i < position.LENGTH; i+= 2)
+                if (position.pieceAt(position.LENGTH - 1, i) == Position.WHITE_PAWN)
+                    terms[Weights.BACK_ROW_PAWN]--;
         }
         
-        return posVal;
+        return position.blackPawnsLeft - position.whitePawnsLeft;
     }
     
     /**
-     * Find the best move in the position for the computer (black)
-     * And make it
+     * Stop the search in progress, it ends with the best move of the last completed iteration.
+     * Can be called from any thread
      */
-    void play()
+    synchronized void stop()
     {
-        moveToPlay = null;
-        board.isComputerPlaying = true;
-        //long start = System.nanoTime();
-        findBestMove();
-        //long result = System.nanoTime() - start;
-        //board.setTitle(Long.toString(result));
-        board.isComputerPlaying = false;
-        if (moveToPlay != null)
-            makeMove(moveToPlay);
-        else
-            board.endGame("User Wins!!!");
+        stopped = true;
+        if (isSearchHandedOver)
+            isStopHandedOver = true;
+    }
+    
+    /**
+     * Get ready for a search of play() or evaluate() which is handed to another thread,
+     * so a stop() made before it starts ends it as well
+     */
+    synchronized void handOverSearch()
+    {
+        isSearchHandedOver = true;
+        isStopHandedOver = false;
+    }
+    
+    // Start a search afresh, or stopped if it was handed over and stopped before it started
+    private synchronized void clearStop()
+    {
+        stopped = isStopHandedOver;
+        isSearchHandedOver = false;
+        isStopHandedOver = false;
+    }
+    
+    //<editor-fold defaultstate="collapsed" desc="Pondering">
+    /**
+     * Get ready to think on the opponent's time, before ponder() is handed to the thread of the computer:
+     * make the reply the table expects, so a move of the opponent made before the search starts
+     * is already a hit or a miss
+     * @param position : the position with the opponent to move, the reply is made on it
+     */
+    synchronized void startPondering(Position position)
+    {
+        isPonderHit = false;
+        ponderedMove = Move.NONE;
+        long reply = expectedReply(position);
+        isPondering = reply != Move.NONE;
+        if (!isPondering)
+            return;
+        position.makeMove(reply);
+        ponderHash = position.hash;
+        ponderStart = System.nanoTime();
+    }
+    
+    /**
+     * Think on the opponent's time: search the position after the reply the table expects,
+     * with the clock stopped until ponderHit(), as deep as depthMax.
+     * Its results stay in the table whether the reply is played or not
+     * @param position : the position startPondering() made the reply on
+     */
+    void ponder(Position position)
+    {
+        synchronized (this)
+        {
+            // No reply to ponder, or the opponent missed it already
+            if (!isPondering && !isPonderHit)
+                return;
+            // After a hit it's the search of the turn handed over, which may have been stopped
+            stopped = isStopHandedOver;
+        }
         
+        this.position = position;
+        moveToPlay = Move.NONE;
+        isPonderSearch = true;
+        findBestMove();
+        isPonderSearch = false;
+        synchronized (this)
+        {
+            // Stopped without a hit, it's the search of a reply which wasn't played
+            if (isPonderHit || !stopped)
+                ponderedMove = moveToPlay;
+        }
+    }
+    
+    // The best reply to the last move played by the table, Move.NONE if it isn't known
+    private long expectedReply(Position position)
+    {
+        long entry = table.probe(position.hash);
+        if (entry == 0)
+            return Move.NONE;
+        int key = TranspositionTable.moveKey(entry);
+        for (long reply : position.generateMoves())
+            if (Move.key(reply) == key)
+                return reply;
+        return Move.NONE;
+    }
+    
+    /**
+     * The opponent moved. If it's the reply pondered, its search goes on with the clock running
+     * and play() plays its move, otherwise the ponder search stops.
+     * The time pondered counts, so a search which pondered the whole time budget ends at once
+     * @param position : the position after the opponent's move
+     */
+    synchronized void ponderHit(Position position)
+    {
+        if (!isPondering)
+            return;
+        if (ponderHash != position.hash)
+        {
+            stopPondering();
+            return;
+        }
+        isPondering = false;
+        isPonderHit = true;
+        if (timeBudget > 0)
+            deadline = ponderStart + timeBudget * 1000000;
+    }
+    
+    /**
+     * Stop thinking on the opponent's time, the move pondered won't be played
+     */
+    synchronized void stopPondering()
+    {
+        if (isPondering)
+            stopped = true;
+        isPondering = false;
+        isPonderHit = false;
+    }
+    
+    // The move of the ponder search if the opponent played the reply pondered, Move.NONE otherwise
+    private synchronized long takePonderedMove()
+    {
+        long move = isPonderHit && ponderHash == position.hash ? ponderedMove : Move.NONE;
+        isPonderHit = false;
+        ponderedMove = Move.NONE;
+        return move;
+    }
+    //</editor-fold>
+    
+    /**
+     * Evaluate the position by searching it within the time budget
+     * @return : position value for black in centipawns, a win as MAX_POS_VAL - plies
+     */
+    int evaluate()
+    {
+        clearStop();
+        searchIteratively();
+        return rootValue;
+    }
+    
+    /**
+     * Find the best move in the position for the player to move
+     * And make it. In the opening the book answers without a search,
+     * and after a ponder hit the search on the opponent's time does
+     * @return : the packed move played, Move.NONE if there is no move to play
+     */
+    long play()
+    {
+        clearStop();
+        moveToPlay = Move.NONE;
+        nodes = 0; // Stays 0 if there's no choice to search
+        helperNodes = 0;
+        if (book != null)
+            moveToPlay = book.move(position, random);
+        if (moveToPlay == Move.NONE)
+            moveToPlay = takePonderedMove();
+        if (moveToPlay == Move.NONE)
+            findBestMove();
+        if (moveToPlay != Move.NONE)
+            position.makeMove(moveToPlay);
+        return moveToPlay;
     }
-}
\ No newline at end of file
+}
@@ -5,9 +5,20 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  * In this frame the game play takes place, including evaluation
@@ -28,10 +39,13 @@ public class Damka extends JFrame {
     private static final Color PURPLE = new Color(250, 0, 250);
     
     // Number of moves without captures or pawn pushes needed for a draw
-    static final int MOVES_FOR_DRAW = 15;
+    static final int MOVES_FOR_DRAW = Position.MOVES_FOR_DRAW;
     
     // Maximum amount of same-color pawns in a position where player can't move
-    static final int MAX_PAWNS_IN_STALEMATE = 5;
+    static final int MAX_PAWNS_IN_STALEMATE = Position.MAX_PAWNS_IN_STALEMATE;
+    
+    // Pause before every capture of a computer streak, in milliseconds
+    private static final int STREAK_DELAY = 321;
 
     /**
      * Direction vector for possible direction the queen can move
@@ -70,7 +84,15 @@ public class Damka extends JFrame {
     public boolean isOnStreak = false; // Is the player in capture streak
     public boolean isComputer; // Does a computer play in this game
     public boolean turn = false; // false - white to play; true - black to play
-    public boolean isComputerPlaying = false; // The computer isn't playing in the first move
+    public boolean isThinking = false; // Is the computer searching for its move
+    private DamkaPawn[] computerHops; // Landings of the capture the computer plays hop by hop
+    private int computerHop; // Index of the next landing to play
+    
+    // The game so far, so it can be saved as PDN
+    private Position gameStart; // The position the game started from
+    private Position turnStart; // The position the current turn started from, its move is found in it
+    private final List<String> gameMoves = new ArrayList<>(); // The moves played, in algebraic notation
+    private String gameResult = Pdn.UNKNOWN;
     
     //<editor-fold defaultstate="collapsed" desc="JPanels">
     public final JPanel gamePanel = new JPanel(true); // Contains the board
@@ -86,8 +108,21 @@ public class Damka extends JFrame {
     private final JLabel evalMsg = new JLabel("Evaluation : ");
     private JLabel evaluation = new JLabel();
     private JLabel stateMsg = new JLabel();
+    
+    private final JProgressBar thinkingBar = new JProgressBar(); // Shown while the computer thinks
+    private final JButton moveNowB = new JButton("Move now"); // Stops the search, which plays its best move so far
+    private final JButton saveGameB = new JButton("Save game"); // Writes the game so far to a PDN file
     //</editor-fold>
     
+    // The computer searches on this thread, so the board stays responsive
+    private final ExecutorService computerThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Computer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> evaluating; // The evaluation in progress
+    private int evaluations = 0; // Number of evaluations started or cancelled, to drop stale results
+    
     private Color winningColor = Color.WHITE; // Background color for evaluation
 //</editor-fold>
     
@@ -127,7 +162,18 @@ public class Damka extends JFrame {
             }
         });
         
+        thinkingBar.setIndeterminate(true);
+        thinkingBar.setString("Thinking...");
+        thinkingBar.setStringPainted(true);
+        thinkingBar.setVisible(false);
+        moveNowB.setVisible(false);
+        moveNowB.addActionListener(ae -> Computer.comp.stop());
+        saveGameB.addActionListener(ae -> saveGame(this));
+        
         // Add JComponents to panels
+        buffer.add(thinkingBar);
+        buffer.add(moveNowB);
+        buffer.add(saveGameB);
         evalPanel.add(evalMsg);
         evalPanel.add(evaluation);
         evalPanel.add(stateMsg);
@@ -187,6 +233,8 @@ public class Damka extends JFrame {
         }
         //</editor-fold>
         
+        gameStart = toPosition();
+        turnStart = gameStart;
 
         // Frame settings
         setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -353,133 +401,18 @@ public class Damka extends JFrame {
     }
 
     /**
-     * Turn the red queen squares according to the chosen pawn.
-     * Function considers the state of the board (forced or not)
-     * Moreover, the function checks wheter A streak is possible.
-     * If a streak is possible the function removes all red squares which
-     * do not lead to a streak. (Based on the official rules)
+     * Turn the red queen squares according to the chosen queen.
+     * The squares are the landings of her moves in the position of the board, found by the ray tables,
+     * so a forced position gets the captures only, and a streak only the landings which continue it
+     * (Based on the official rules)
      */
     public void turnRedQueenSquaresOn()
     {
-        DamkaPawn enemy = null; // The enemy tile in the current iteration
-        TileColor enemyColor = null; // The color of the enemy pawn found
-        TileColor currentColor; // Current color index of tile checked
-        int currentRowIndex; // Current row index of tile checked
-        int currentColIndex; // Current col index of tile checked
-        TileColor colorEaten1; // Pawn color to eat
-        TileColor colorEaten2; // Queen color to eat
-        boolean enemyFound; // Did we came across enemy tile in the current iteration
-        boolean doubleFound; // Did we find double option in the current iteration
-        
-        // Determine the "pray" colors in case position is "must-capture"
-        if (turn)
-        {
-            colorEaten1 = TileColor.WHITE_PAWN;
-            colorEaten2 = TileColor.WHITE_QUEEN;
-        }
-        else
-        {
-            colorEaten1 = TileColor.BLACK_PAWN;
-            colorEaten2 = TileColor.BLACK_QUEEN;
-        }
-        
-        for (int i = 0; i < 4; i++)
-        {
-            doubleFound = false;
-            enemyFound = false;
-            currentRowIndex = chosenPawnRow + QUEEN_DIRS[i][0];
-            currentColIndex = chosenPawnCol + QUEEN_DIRS[i][1];
-            if (currentRowIndex == -1 || currentRowIndex == LENGTH ||
-                currentColIndex == -1 || currentColIndex == LENGTH)
-                continue;
-            currentColor = tiles[currentRowIndex][currentColIndex].color;
-            if ((currentColor == colorEaten1 || currentColor == colorEaten2) && isForced)
-                {
-                    enemyFound = true;
-                    enemy = tiles[currentRowIndex][currentColIndex];
-                    enemyColor = enemy.color;
-                    currentRowIndex += QUEEN_DIRS[i][0];
-                    currentColIndex += QUEEN_DIRS[i][1];
-                     if (currentRowIndex == -1 || currentRowIndex == LENGTH ||
-                        currentColIndex == -1 || currentColIndex == LENGTH)
-                        continue;
-                    currentColor = tiles[currentRowIndex][currentColIndex].color;
-                }
-            
-            // Loop will be broken when there is no possibility of fiding a red square
-            // in the current direction.
-            while (true)
-            {
-                if (!isForced && currentColor != TileColor.BLACK)
-                    break;
-                if (isForced && currentColor != TileColor.BLACK && enemyFound)
-                    break;
-                    
-                // If The current color is black and either a capture exists and enemy found
-                // or enemy isn't found and there is no capture (using XOR as boolean operator),
-                // then the square is valid option, hence I turn that black square to red.
-                if (isForced == enemyFound && currentColor == TileColor.BLACK)
-                {
-                    // Check if a double is possible
-                    if (isForced && !doubleFound)
-                    {
-                        enemy.setColor(TileColor.BLACK);
-                        if (canQueenCapture(currentRowIndex, currentColIndex, colorEaten1, colorEaten2))
-                            doubleFound = true;
-                        enemy.setColor(enemyColor);
-                    }
-                    
-                    tiles[currentRowIndex][currentColIndex].setColor(TileColor.RED);
-                }
-                
-                currentRowIndex += QUEEN_DIRS[i][0];
-                currentColIndex += QUEEN_DIRS[i][1];
-                if (currentRowIndex == -1 || currentRowIndex == LENGTH ||
-                    currentColIndex == -1 || currentColIndex == LENGTH)
-                    break;
-                currentColor = tiles[currentRowIndex][currentColIndex].color;
-                
-                // Check for enemy
-                if ((currentColor == colorEaten1 || currentColor == colorEaten2) && !enemyFound && isForced)
-                {
-                    enemyFound = true;
-                    enemy = tiles[currentRowIndex][currentColIndex];
-                    enemyColor = enemy.color;
-                    currentRowIndex += QUEEN_DIRS[i][0];
-                    currentColIndex += QUEEN_DIRS[i][1];
-                    if (currentRowIndex == -1 || currentRowIndex == LENGTH ||
-                        currentColIndex == -1 || currentColIndex == LENGTH)
-                        break;
-                    currentColor = tiles[currentRowIndex][currentColIndex].color;
-                }
-            }
-            
-            // If double found, remove red squares that do not lead to double
-            if (doubleFound)
-            {
-                enemy.setColor(TileColor.BLACK); // will be returned
-                if (currentRowIndex == -1 || currentRowIndex == LENGTH ||
-                    currentColIndex == -1 || currentColIndex == LENGTH ||
-                    tiles[currentRowIndex][currentColIndex].color != TileColor.RED)
-                {
-                    currentRowIndex -= QUEEN_DIRS[i][0];
-                    currentColIndex -= QUEEN_DIRS[i][1];
-                }
-                currentColor = tiles[currentRowIndex][currentColIndex].color;
-            
-                while (currentColor == TileColor.RED)
-                {
-                        if (!canQueenCapture(currentRowIndex, currentColIndex, colorEaten1, colorEaten2))
-                        tiles[currentRowIndex][currentColIndex].setColor(TileColor.BLACK);
-
-                    currentRowIndex -= QUEEN_DIRS[i][0];
-                    currentColIndex -= QUEEN_DIRS[i][1];
-                    currentColor = tiles[currentRowIndex][currentColIndex].color;
-                }
-                
-                enemy.setColor(enemyColor);
-            }
-        }
+        Position position = toPosition();
+        int[] steps = new int[position.SQUARES];
+        int end = position.generateSteps(position.square(chosenPawnRow, chosenPawnCol), steps, 0);
+        for (int i = 0; i < end; i++)
+            tiles[position.rowOf[steps[i]]][position.colOf[steps[i]]].setColor(TileColor.RED);
     }
     
     /**
@@ -511,8 +444,6 @@ public class Damka extends JFrame {
             else
             {
                 tile.setColor(TileColor.BLACK_QUEEN);
-                if (isComputerPlaying && !Computer.comp.movesStack.isEmpty())//changedd
-                    Computer.comp.movesStack.peek().wasPremotion = true;
                 blackQueens++;
             }
                 
@@ -524,8 +455,6 @@ public class Damka extends JFrame {
             else
             {
                 tile.setColor(TileColor.WHITE_QUEEN);
-                if (isComputerPlaying && !Computer.comp.movesStack.isEmpty())
-                    Computer.comp.movesStack.peek().wasPremotion = true;
                 whiteQueens++;
             }
                 
@@ -545,8 +474,8 @@ public class Damka extends JFrame {
     public void moveQueen(DamkaPawn tile)
     {
         movesWithoutProgress++;
-        if (movesWithoutProgress == MOVES_FOR_DRAW && !isComputerPlaying)
-            endGame("Draw!!!");
+        if (movesWithoutProgress == MOVES_FOR_DRAW)
+            endGame("Draw!!!", Pdn.DRAW);
         if (turn)
             tile.setColor(TileColor.BLACK_QUEEN);
         else
@@ -561,9 +490,8 @@ public class Damka extends JFrame {
     /**
      * 1) Change the turn
      * 2) Check if the position is forced
-     * 3) Make the computer play if it should
-     * 4) Check if the game is over.
-     * 5) reevaluate the position if needed
+     * 3) Record the move played
+     * 4) Start the next turn
      */
     public void changeTurn()
     {
@@ -571,69 +499,48 @@ public class Damka extends JFrame {
         showEval.setEnabled(true);
         turn = !turn;
         isForced = DoesCaptureExist();
-        
-        if (isComputer && !isComputerPlaying && turn)
+        recordMove();
+        startTurn();
+    }
+    
+    /**
+     * 1) Make the computer play if it should
+     * 2) Check if the game is over.
+     * 3) reevaluate the position if needed
+     */
+    private void startTurn()
+    {
+        if (isComputer && turn)
         {
-            //gamePanel.update(gamePanel.getGraphics());
-            Computer.comp.play();
-            isForced = DoesCaptureExist();
+            computerPlay();
         }
         else
         {
-            if (isComputerPlaying)
-                return;
             if (turn && !isForced && blackPawnsLeft <= MAX_PAWNS_IN_STALEMATE &&
                 !canPlay(TileColor.BLACK_PAWN,
                          TileColor.BLACK_QUEEN))
-                endGame("White Wins!!!");
+                endGame("White Wins!!!", Pdn.WHITE_WIN);
             else if (!turn && !isForced && whitePawnsLeft <= MAX_PAWNS_IN_STALEMATE &&
                      !canPlay(TileColor.WHITE_PAWN,
                               TileColor.WHITE_QUEEN))
-                endGame("Black Wins!!!");
-            else if (showEval.isSelected())
-                evaluate();
+                endGame("Black Wins!!!", Pdn.BLACK_WIN);
+            else
+            {
+                if (showEval.isSelected())
+                    evaluate();
+                // The computer thinks on the user's time
+                if (isComputer)
+                    ponder();
+            }
         }
         
     }
     
+    // Check if the player to move has a capture, on a headless copy of the board
+    // where all the pawns are checked at once
     private boolean DoesCaptureExist()
     {
-        TileColor colorEating1;
-        TileColor colorEating2;
-        TileColor colorEaten1;
-        TileColor colorEaten2;
-        
-        if (turn)
-        {
-            colorEating1 = TileColor.BLACK_PAWN;
-            colorEating2 = TileColor.BLACK_QUEEN;
-            colorEaten1 = TileColor.WHITE_PAWN;
-            colorEaten2 = TileColor.WHITE_QUEEN;
-        }
-        else
-        {
-            colorEating1 = TileColor.WHITE_PAWN;
-            colorEating2 = TileColor.WHITE_QUEEN;
-            colorEaten1 = TileColor.BLACK_PAWN;
-            colorEaten2 = TileColor.BLACK_QUEEN;
-        }
-        
-        for (int i = 0; i < LENGTH; i++)
-        {
-            for (int j = 1 - i%2; j < LENGTH; j+= 2)
-            {
-                if (tiles[i][j].color == colorEating1)
-                {
-                    if (canPawnCapture(i, j, colorEaten1, colorEaten2))
-                        return true;
-                }
-                else if (tiles[i][j].color == colorEating2)
-                    if (canQueenCapture(i, j, colorEaten1, colorEaten2))
-                        return true;
-            }
-        }
-        
-        return false;
+        return toPosition().doesCaptureExist();
     }
     
    private boolean canPawnCapture(int row, int col, TileColor colorEaten1, TileColor colorEaten2)
@@ -740,12 +647,6 @@ public class Damka extends JFrame {
        TileColor colorToEat1, colorToEat2;
        int deadTileRow = (tile.row + current.row)/2;
        int deadTileCol = (tile.col + current.col)/2;
-       if (isComputerPlaying && !Computer.comp.movesStack.isEmpty())
-       {
-           Computer.comp.movesStack.peek().capturedCol = deadTileCol;
-           Computer.comp.movesStack.peek().capturedRow = deadTileRow;
-           Computer.comp.movesStack.peek().capturedColor = tiles[deadTileRow][deadTileCol].color;
-       }
        boolean wasPremoted = false;
        
        deadTile = tiles[deadTileRow][deadTileCol];
@@ -782,9 +683,6 @@ public class Damka extends JFrame {
                tile.setColor(TileColor.WHITE_PAWN);
        }
        
-       if (isComputerPlaying && !Computer.comp.movesStack.isEmpty())
-            Computer.comp.movesStack.peek().wasPremotion = wasPremoted;
-       
        // Check if Position is on streak
        if (!wasPremoted && canPawnCapture(tile.row, tile.col, colorToEat1, colorToEat2))
        {
@@ -799,17 +697,8 @@ public class Damka extends JFrame {
            chosenPawnCol = tile.col;
            turnRedPawnSquaresOn();
            
-           if (isComputer && !isComputerPlaying && turn)
-           {
-               
-               try {
-                   gamePanel.update(gamePanel.getGraphics());
-                   Thread.sleep(321);
-               } catch (InterruptedException ex) {
-                   Logger.getLogger(Damka.class.getName()).log(Level.SEVERE, null, ex);
-               }
-               Computer.comp.play();
-           }
+           if (isComputer && turn)
+               playNextHopLater();
            
                
        }
@@ -825,17 +714,8 @@ public class Damka extends JFrame {
            chosenPawnRow = tile.row;
            chosenPawnCol = tile.col;
            turnRedQueenSquaresOn();
-           if (isComputer && !isComputerPlaying && turn)
-           {
-               
-               try {
-                   gamePanel.update(gamePanel.getGraphics());
-                   Thread.sleep(321);
-               } catch (InterruptedException ex) {
-                   Logger.getLogger(Damka.class.getName()).log(Level.SEVERE, null, ex);
-               }
-               Computer.comp.play();
-           }
+           if (isComputer && turn)
+               playNextHopLater();
                
        }
        else
@@ -880,12 +760,6 @@ public class Damka extends JFrame {
            deadTile = tiles[deadTileRow][deadTileCol];
        }
        
-       if (isComputerPlaying && !Computer.comp.movesStack.isEmpty())
-       {
-           Computer.comp.movesStack.peek().capturedCol = deadTileCol;
-           Computer.comp.movesStack.peek().capturedRow = deadTileRow;
-           Computer.comp.movesStack.peek().capturedColor = tiles[deadTileRow][deadTileCol].color;
-       }
        
        if (turn)
        {
@@ -915,11 +789,8 @@ public class Damka extends JFrame {
                tile.setColor(TileColor.WHITE_QUEEN_CHOSEN);
            turnRedQueenSquaresOn();
            
-           if (isComputer && !isComputerPlaying && turn)
-           {
-               //gamePanel.update(gamePanel.getGraphics());// has it's downside...
-               Computer.comp.play();
-           }
+           if (isComputer && turn)
+               playNextHopLater();
                
        }
        else
@@ -948,25 +819,32 @@ public class Damka extends JFrame {
     /**
      * End the game with custom form.
      * @param message: message to display
+     * @param result: result of the game in PDN, e.g. Pdn.WHITE_WIN
      */
-    public void endGame(String message)
+    public void endGame(String message, String result)
    {
        setEnabled(false);
+       Computer.comp.stopPondering();
+       gameResult = result;
        
        JFrame gameOverF = new JFrame();
        JLabel gameOverL = new JLabel(message);
        JButton gameOverB = new JButton("OK!");
+       JButton saveB = new JButton("Save game");
        
        gameOverL.setBounds(60, 95, 100, 20);
        gameOverB.setBounds(35, 20, 120, 40);
+       saveB.setBounds(35, 65, 120, 25);
        
        gameOverB.addActionListener(ae -> {
            gameOverF.dispose();
            dispose();
        });
+       saveB.addActionListener(ae -> saveGame(gameOverF));
        
        gameOverF.add(gameOverL);
        gameOverF.add(gameOverB);
+       gameOverF.add(saveB);
        
        gameOverF.setSize(200, 150);
        gameOverF.setLayout(null);
@@ -1014,34 +892,300 @@ public class Damka extends JFrame {
        return false;
    }
    
-   // Evaluate the position using the In-Place Minimax DFS with Alpha Beta pruning algorithm
-   // in the main.Computer class.
-   // Update the evaluation panel according to the evaluation
+    // Find the move just played among the moves of the position its turn started from, and add it to the game
+    private void recordMove()
+    {
+        Position position = toPosition();
+        long[] moves = turnStart.generateMoves();
+        for (int i = 0; i < moves.length; i++)
+        {
+            turnStart.makeMove(moves[i]);
+            boolean isPlayed = turnStart.hash == position.hash;
+            turnStart.undoMove(moves[i]);
+            if (isPlayed)
+            {
+                gameMoves.add(turnStart.moveName(moves[i]));
+                break;
+            }
+        }
+        turnStart = position;
+    }
+    
+    /**
+     * Go on with a game read from PDN: show the position after its moves, and play on from it
+     * @param game: a game of this board size
+     * @param played: its moves as Pdn.replay named them, every capture with all its landings
+     * @param position: the position after them
+     */
+    void load(Pdn.Game game, List<String> played, Position position)
+    {
+        gameStart = game.start();
+        gameMoves.addAll(played);
+        for (int i = 0; i < LENGTH; i++) {
+            for (int j = 1 - i % 2; j < LENGTH; j += 2) {
+                switch (position.pieceAt(i, j))
+                {
+                    case Position.WHITE_PAWN:
+                        tiles[i][j].setColor(TileColor.WHITE_PAWN);
+                        break;
+                    case Position.BLACK_PAWN:
+                        tiles[i][j].setColor(TileColor.BLACK_PAWN);
+                        break;
+                    case Position.WHITE_QUEEN:
+                        tiles[i][j].setColor(TileColor.WHITE_QUEEN);
+                        break;
+                    case Position.BLACK_QUEEN:
+                        tiles[i][j].setColor(TileColor.BLACK_QUEEN);
+                        break;
+                    default:
+                        tiles[i][j].setColor(TileColor.BLACK);
+                        break;
+                }
+            }
+        }
+        
+        whitePawnsLeft = position.whitePawnsLeft;
+        blackPawnsLeft = position.blackPawnsLeft;
+        whiteQueens = position.whiteQueens;
+        blackQueens = position.blackQueens;
+        movesWithoutProgress = position.movesWithoutProgress;
+        turn = position.turn;
+        isForced = position.isForced;
+        turnStart = toPosition();
+        startTurn();
+    }
+    
+    // Let the user choose a file, and write the game so far to it as PDN
+    private void saveGame(Component parent)
+    {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Portable Draughts Notation", "pdn"));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        Pdn.Game game = new Pdn.Game();
+        game.tags.put("Event", "Damka");
+        game.tags.put("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        game.tags.put("White", "Human");
+        game.tags.put("Black", isComputer ? "Computer" : "Human");
+        game.tags.put("Result", gameResult);
+        game.setStart(gameStart);
+        game.moves.addAll(gameMoves);
+        game.result = gameResult;
+        try (Writer out = Files.newBufferedWriter(chooser.getSelectedFile().toPath())) {
+            Pdn.write(game, out);
+        } catch (IOException ex) {
+            Logger.getLogger(Damka.class.getName()).log(Level.SEVERE, null, ex);
+            JOptionPane.showMessageDialog(parent, "Can't save the game: " + ex.getMessage(), "Save game", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    /**
+     * Copy the tiles into a headless position for the computer to search
+     * @return the position on the board, the pieces captured by a streak in progress marked dead
+     */
+    Position toPosition()
+    {
+        Position position = new Position(LENGTH, PAWN_ROWS);
+        for (int i = 0; i < LENGTH; i++) {
+            for (int j = 1 - i % 2; j < LENGTH; j += 2) {
+                switch (tiles[i][j].color)
+                {
+                    case WHITE_PAWN:
+                    case WHITE_PAWN_CHOSEN:
+                        position.put(i, j, Position.WHITE_PAWN);
+                        break;
+                    case BLACK_PAWN:
+                    case BLACK_PAWN_CHOSEN:
+                        position.put(i, j, Position.BLACK_PAWN);
+                        break;
+                    case WHITE_QUEEN:
+                    case WHITE_QUEEN_CHOSEN:
+                        position.put(i, j, Position.WHITE_QUEEN);
+                        break;
+                    case BLACK_QUEEN:
+                    case BLACK_QUEEN_CHOSEN:
+                        position.put(i, j, Position.BLACK_QUEEN);
+                        break;
+                    case DEAD_WHITE:
+                    case DEAD_BLACK:
+                        position.putDead(i, j);
+                        break;
+                    default: // BLACK or RED
+                        break;
+                }
+            }
+        }
+        
+        position.turn = turn;
+        position.isForced = isForced;
+        position.movesWithoutProgress = movesWithoutProgress;
+        position.rehash();
+        return position;
+    }
+    
+    /**
+     * Let the computer find its move on the computer thread,
+     * and play it on the board when found
+     */
+    private void computerPlay()
+    {
+        cancelEvaluation();
+        Position position = toPosition();
+        // If the user played the reply the computer pondered, its search goes on
+        Computer.comp.ponderHit(position);
+        // "Move now" stops the search even before it starts
+        Computer.comp.handOverSearch();
+        setThinking(true);
+        computerThread.submit(() -> {
+            Computer.comp.position = position;
+            long move = Computer.comp.play();
+            SwingUtilities.invokeLater(() -> {
+                setThinking(false);
+                playComputerMove(position, move);
+            });
+        });
+    }
+    
+    /**
+     * Let the computer think on the user's time on the computer thread,
+     * about the position after the reply it expects
+     */
+    private void ponder()
+    {
+        Position position = toPosition();
+        Computer.comp.startPondering(position);
+        computerThread.submit(() -> Computer.comp.ponder(position));
+    }
+    
+    // Play the next hop of the computer's capture after a pause, so the previous one can be seen
+    private void playNextHopLater()
+    {
+        Timer timer = new Timer(STREAK_DELAY, ae -> Capture(computerHops[computerHop++]));
+        timer.setRepeats(false);
+        timer.start();
+    }
+    
+    // Show or hide the thinking indicator, and ignore the user's clicks while the computer thinks
+    private void setThinking(boolean isThinking)
+    {
+        this.isThinking = isThinking;
+        thinkingBar.setVisible(isThinking);
+        moveNowB.setVisible(isThinking);
+        buffer.revalidate();
+    }
+    
+    /**
+     * Play the move found by the computer on the board
+     * @param position: the position the computer searched
+     * @param move: the move found, a capture with all its hops, Move.NONE if there is none
+     */
+    private void playComputerMove(Position position, long move)
+    {
+        if (move == Move.NONE)
+        {
+            endGame("User Wins!!!", Pdn.WHITE_WIN);
+            return;
+        }
+        
+        int fromRow = position.rowOf[Move.from(move)];
+        int fromCol = position.colOf[Move.from(move)];
+        DamkaPawn originTile = tiles[fromRow][fromCol];
+        DamkaPawn destinationTile = tiles[position.rowOf[Move.to(move)]][position.colOf[Move.to(move)]];
+        chosenPawnRow = fromRow;
+        chosenPawnCol = fromCol;
+        
+        // set the pawn/queen as chosen if isn't already
+        if (originTile.color == TileColor.WHITE_PAWN)
+            originTile.setColor(TileColor.WHITE_PAWN_CHOSEN);
+        else if (originTile.color == TileColor.BLACK_PAWN)
+            originTile.setColor(TileColor.BLACK_PAWN_CHOSEN);
+        else if (originTile.color == TileColor.WHITE_QUEEN)
+            originTile.setColor(TileColor.WHITE_QUEEN_CHOSEN);
+        else if (originTile.color == TileColor.BLACK_QUEEN)
+            originTile.setColor(TileColor.BLACK_QUEEN_CHOSEN);
+        
+        if (!Move.isCapture(move))
+        {
+            if (originTile.color == TileColor.WHITE_PAWN_CHOSEN ||
+                    originTile.color == TileColor.BLACK_PAWN_CHOSEN)
+                movePawn(destinationTile);
+            else
+                moveQueen(destinationTile);
+        }
+        else // Forced to play = capture, shown hop by hop
+        {
+            int[] path = toPosition().path(move);
+            computerHops = new DamkaPawn[path.length];
+            for (int i = 0; i < path.length; i++)
+                computerHops[i] = tiles[position.rowOf[path[i]]][position.colOf[path[i]]];
+            computerHop = 1;
+            Capture(computerHops[0]);
+        }
+    }
+    
+    // Stop the evaluation in progress, its result is of a position that is gone
+    private void cancelEvaluation()
+    {
+        evaluations++;
+        if (evaluating != null && !evaluating.isDone())
+        {
+            evaluating.cancel(false);
+            Computer.comp.stop();
+        }
+    }
+   
+   // Evaluate the position using the Minimax DFS with Alpha Beta pruning algorithm
+   // in the main.Computer class, on a headless copy of the board and on the computer thread.
+   // Update the evaluation panel when done
    private void evaluate()
    {
        if (!isOnStreak && isPawnChosen)
            turnPawnOff();
-       isComputerPlaying = true;
-       int temp = movesWithoutProgress, msgIndex;
-       float posValForWhite =
-               -Computer.comp.miniMaxAlphaBeta(0, turn, Computer.MIN_POS_VAL, Computer.MAX_POS_VAL);
-       evaluation.setText("" + posValForWhite);
-       if (posValForWhite > 1.5)
+       // The evaluation waits for no pondering
+       Computer.comp.stopPondering();
+       cancelEvaluation();
+       int evaluationId = evaluations;
+       Position position = toPosition();
+       Computer.comp.handOverSearch();
+       evaluating = computerThread.submit(() -> {
+           Computer.comp.position = position;
+           int posValForWhite = -Computer.comp.evaluate();
+           SwingUtilities.invokeLater(() -> {
+               if (evaluationId == evaluations)
+                   showEvaluation(posValForWhite);
+           });
+       });
+   }
+   
+   // Update the evaluation panel according to the evaluation
+   private void showEvaluation(int posValForWhite)
+   {
+       int msgIndex;
+       // In pawns, or the plies left to a win
+       if (Computer.isWin(posValForWhite))
+           evaluation.setText((posValForWhite > 0 ? "White" : "Black") + " wins in "
+                   + (Computer.MAX_POS_VAL - Math.abs(posValForWhite)));
+       else if (Computer.isTablebaseWin(posValForWhite))
+           evaluation.setText((posValForWhite > 0 ? "White" : "Black") + " wins");
+       else
+           evaluation.setText("" + posValForWhite / (float) Computer.PAWN_VALUE);
+       if (posValForWhite > 150)
        {
            msgIndex = 3;
            winningColor = Color.YELLOW;
        }
-       else if (posValForWhite > 0.6)
+       else if (posValForWhite > 60)
        {
            msgIndex = 1;
            winningColor = Color.ORANGE;
        }
-       else if (posValForWhite > -0.6)
+       else if (posValForWhite > -60)
        {
            msgIndex = 0;
            winningColor = Color.WHITE;
        }
-       else if (posValForWhite > -1.5)
+       else if (posValForWhite > -150)
        {
            winningColor = Color.CYAN;
            msgIndex = 2;
@@ -1055,8 +1199,5 @@ public class Damka extends JFrame {
        evalPanel.setBackground(winningColor);
        evaluation.setBackground(winningColor);
        evalMsg.setBackground(winningColor);
-       
-       isComputerPlaying = false;
-       movesWithoutProgress = temp;
    }
 }
\ No newline at end of file
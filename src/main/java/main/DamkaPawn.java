@@ -79,6 +79,10 @@ public class DamkaPawn extends JButton implements ActionListener{
     @Override
     public void actionPerformed(ActionEvent e) 
     {
+        // The board waits for the computer's move
+        if (board.isThinking)
+            return;
+        
         if (color == TileColor.WHITE ||
             color == TileColor.BLACK ||
             color == TileColor.DEAD_BLACK ||
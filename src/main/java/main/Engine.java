@@ -0,0 +1,262 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless engine, driven by a line protocol over stdin/stdout, for scripts and tournament managers.
+ * Never touches AWT, so it runs without a display.
+ * Commands:
+ *   size length pawnRows                   - new game on a board of the size, from the start position
+ *   position startpos|fen FEN [moves m...] - set the position, then play the moves ("c3-d4", "c3xe5xg3")
+ *   threads N                              - search with N threads, all the processors by default
+ *   go [depth N] [movetime MS]             - search, answered by "info score cp|win|loss N ..." and "bestmove m"
+ *                                            ("bestmove none" if there is no move)
+ *   stop                                   - end the search, it answers with the best move so far
+ *   isready                                - answered by "readyok" once no search is running
+ *   print                                  - answered by the FEN of the position
+ *   quit
+ * A move which captures is the whole capture, written with every landing of its hops ("c3xe5xg3");
+ * a capture given by its ends alone ("c3xg3") is the first one between them.
+ * Errors are answered by "error ..." and leave the state as it was.
+ * The evaluation weights, the tablebase and the opening book in the working directory, if there are any,
+ * are used by every search; a move of the book is answered by "bestmove" alone.
+ * @author Daniel Kanevsky
+ */
+final class Engine {
+
+    // Search settings of "go" without arguments, those of the hard level
+    private static final int DEFAULT_DEPTH = Main.HARD;
+    private static final long DEFAULT_MOVE_TIME = Main.THINK_TIME;
+
+    private Position position;
+
+    // Searches run on a thread of their own, so "stop" is read while searching
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Engine search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> searching; // The search in progress
+
+    private Engine()
+    {
+        position = new Position(8, 3);
+        position.setStartPosition();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Computer.comp.weights = Weights.openDefault();
+        Computer.comp.tablebase = Tablebase.openDefault();
+        Computer.comp.book = Book.openDefault();
+        new Engine().run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    private void run(BufferedReader in) throws IOException
+    {
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            String[] words = line.trim().split("\\s+");
+            try {
+                switch (words[0])
+                {
+                    case "":
+                        break;
+                    case "size":
+                        size(words);
+                        break;
+                    case "position":
+                        position(words);
+                        break;
+                    case "threads":
+                        threads(words);
+                        break;
+                    case "go":
+                        go(words);
+                        break;
+                    case "stop":
+                        stopSearch();
+                        break;
+                    case "isready":
+                        waitForSearch();
+                        send("readyok");
+                        break;
+                    case "print":
+                        send(position.toFen());
+                        break;
+                    case "quit":
+                        stopSearch();
+                        return;
+                    default:
+                        send("error unknown command " + words[0]);
+                }
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                send("error " + ex.getMessage());
+            }
+        }
+    }
+
+    // size length pawnRows
+    private void size(String[] words)
+    {
+        checkIdle();
+        if (words.length != 3)
+            throw new IllegalArgumentException("usage: size length pawnRows");
+        int length = Integer.parseInt(words[1]);
+        int pawnRows = Integer.parseInt(words[2]);
+        // The sizes the settings frame offers
+        if (length < 4 || length > 12 || pawnRows < 1 || pawnRows >= (length + 1) / 2)
+            throw new IllegalArgumentException("unsupported board " + length + "x" + length + " with " + pawnRows + " pawn rows");
+        Position start = new Position(length, pawnRows);
+        start.setStartPosition();
+        position = start;
+    }
+
+    // threads N
+    private void threads(String[] words)
+    {
+        checkIdle();
+        if (words.length != 2)
+            throw new IllegalArgumentException("usage: threads N");
+        int threads = Integer.parseInt(words[1]);
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be 1 or more");
+        Computer.comp.threads = threads;
+    }
+
+    // position startpos|fen FEN [moves m...]
+    private void position(String[] words)
+    {
+        checkIdle();
+        int i = 1;
+        Position next;
+        if (words.length > i && words[i].equals("startpos"))
+        {
+            next = new Position(position.LENGTH, position.PAWN_ROWS);
+            next.setStartPosition();
+            i++;
+        }
+        else if (words.length > i + 1 && words[i].equals("fen"))
+        {
+            next = Position.fromFen(words[i + 1], position.LENGTH, position.PAWN_ROWS);
+            i += 2;
+        }
+        else
+            throw new IllegalArgumentException("usage: position startpos|fen FEN [moves m...]");
+
+        if (words.length > i)
+        {
+            if (!words[i].equals("moves"))
+                throw new IllegalArgumentException("unexpected " + words[i]);
+            for (i++; i < words.length; i++)
+            {
+                long move = next.parseMove(words[i]);
+                if (move == Move.NONE)
+                    throw new IllegalArgumentException("illegal move " + words[i]);
+                next.makeMove(move);
+            }
+        }
+        position = next;
+    }
+
+    // go [depth N] [movetime MS]
+    private void go(String[] words)
+    {
+        checkIdle();
+        int depth = 0;
+        long moveTime = 0;
+        for (int i = 1; i < words.length; i += 2)
+        {
+            if (i + 1 == words.length)
+                throw new IllegalArgumentException("missing value of " + words[i]);
+            if (words[i].equals("depth"))
+                depth = Integer.parseInt(words[i + 1]);
+            else if (words[i].equals("movetime"))
+                moveTime = Long.parseLong(words[i + 1]);
+            else
+                throw new IllegalArgumentException("unknown go argument " + words[i]);
+        }
+        // A depth alone is searched however long it takes, a time alone as deep as it allows
+        if (depth == 0 && moveTime == 0)
+            moveTime = DEFAULT_MOVE_TIME;
+        if (depth == 0)
+            depth = DEFAULT_DEPTH;
+        if (depth < 0 || moveTime < 0)
+            throw new IllegalArgumentException("depth and movetime can't be negative");
+
+        Position searched = new Position(position);
+        int depthMax = depth;
+        long timeBudget = moveTime;
+        Computer.comp.handOverSearch();
+        searching = searchThread.submit(() -> {
+            Computer.comp.depthMax = depthMax;
+            Computer.comp.timeBudget = timeBudget;
+            Computer.comp.position = searched;
+            long start = System.nanoTime();
+            // The move is made on the searched position, so it's named on the position before it
+            Position before = new Position(searched);
+            long move = Computer.comp.play();
+            long time = Math.max((System.nanoTime() - start) / 1000000, 1);
+            if (move == Move.NONE)
+            {
+                send("bestmove none");
+                return;
+            }
+            // The score is for the side to move, in centipawns or the plies to a win.
+            // A forced move isn't searched, so it has none
+            if (Computer.comp.nodes() > 0)
+            {
+                int value = before.turn ? Computer.comp.value() : -Computer.comp.value();
+                String score = !Computer.isWin(value) ? "cp " + value
+                        : (value > 0 ? "win " : "loss ") + (Computer.MAX_POS_VAL - Math.abs(value));
+                send(String.format(Locale.ROOT, "info score %s nodes %d time %d nps %d",
+                        score, Computer.comp.nodes(), time, Computer.comp.nodes() * 1000 / time));
+            }
+            send("bestmove " + before.moveName(move));
+        });
+    }
+
+    private void checkIdle()
+    {
+        if (searching != null && !searching.isDone())
+            throw new IllegalStateException("searching");
+    }
+
+    /**
+     * Stop the search in progress and wait for its best move.
+     * A search which hasn't started yet starts stopped
+     */
+    private void stopSearch()
+    {
+        if (searching != null && !searching.isDone())
+            Computer.comp.stop();
+        waitForSearch();
+    }
+
+    private void waitForSearch()
+    {
+        if (searching == null)
+            return;
+        try {
+            searching.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            Logger.getLogger(Engine.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static synchronized void send(String line)
+    {
+        System.out.println(line);
+        System.out.flush();
+    }
+}
@@ -4,6 +4,11 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import static javax.swing.JFrame.EXIT_ON_CLOSE;
 
@@ -17,12 +22,22 @@ public class Main {
     private static final Color JUNGLE_GREEN = new Color(50, 155, 105);
 
     // recursion depths
-    private static final int EASY = 4;
-    private static final int MEDIUM = 6;
-    private static final int HARD = 8;
+    static final int EASY = 4;
+    static final int MEDIUM = 6;
+    static final int HARD = 32; // As deep as the thinking time allows
+
+    // thinking time of a computer move, in milliseconds
+    static final long THINK_TIME = 1500;
 
     public static void main(String[] args) {
 
+        // The evaluation plays by tuned weights, if they were written
+        Computer.comp.weights = Weights.openDefault();
+        // Endgames of a few queens are played exactly, if their tablebase was generated
+        Computer.comp.tablebase = Tablebase.openDefault();
+        // And the opening is answered at once, if a book was built
+        Computer.comp.book = Book.openDefault();
+
         //<editor-fold defaultstate="collapsed" desc="Settings JFrame">
 
 
@@ -52,6 +67,16 @@ public class Main {
         lengthLabel.setBounds(70, 60, 130, 30);
         pawnRowsLabel.setBounds(245, 60, 120, 30);
 
+        // Threads searching every move of the computer, all the processors by default
+        JComboBox<Integer> threadsComboBox = new JComboBox<>();
+        JLabel threadsLabel = new JLabel("Threads :");
+        threadsComboBox.setBounds(270, 200, 60, 50);
+        threadsLabel.setBounds(270, 170, 100, 30);
+        for (int i = 1; i <= Runtime.getRuntime().availableProcessors(); i++)
+            threadsComboBox.addItem(i);
+        threadsComboBox.setSelectedItem(Computer.comp.threads);
+        threadsComboBox.addActionListener(ae -> Computer.comp.threads = threadsComboBox.getItemAt(threadsComboBox.getSelectedIndex()));
+
         // instantiate the buttons
         JButton humanB = new JButton("Human Vs. Human");
         humanB.setBounds(50, 10, 300, 20);
@@ -81,6 +106,38 @@ public class Main {
         boardLengthComboBox.setSelectedItem(null);
 
 
+        // Go on with a game saved as PDN, on its own board
+        JButton loadB = new JButton("Load Game");
+        loadB.setBounds(50, 330, 300, 20);
+        loadB.addActionListener(ae -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("Portable Draughts Notation", "pdn"));
+            if (chooser.showOpenDialog(settingsFrame) != JFileChooser.APPROVE_OPTION)
+                return;
+            Pdn.Game game;
+            // The moves named by the replay, every capture with all its landings, and the position after them
+            List<String> played = new ArrayList<>();
+            Position position;
+            try (Pdn.Parser parser = new Pdn.Parser(Files.newBufferedReader(chooser.getSelectedFile().toPath()))) {
+                game = parser.next();
+                if (game == null)
+                    throw new IllegalArgumentException("No game in the file");
+                position = Pdn.replay(game, played);
+            } catch (IOException | IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(settingsFrame, "Can't load the game: " + ex.getMessage(),
+                        "Load Game", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            Damka d = new Damka(game.length(), game.pawnRows());
+            setDifficulty(easy, medium);
+            d.isComputer = JOptionPane.showConfirmDialog(settingsFrame, "Play against the computer?",
+                    "Load Game", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+            d.start();
+            d.load(game, played, position);
+            settingsFrame.dispose();
+        });
+
+
         boardLengthComboBox.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent ae) {
@@ -99,9 +156,12 @@ public class Main {
         settingsFrame.add(hard);
         settingsFrame.add(lengthLabel);
         settingsFrame.add(pawnRowsLabel);
-        settingsFrame.setSize(400, 360);
+        settingsFrame.add(threadsComboBox);
+        settingsFrame.add(threadsLabel);
+        settingsFrame.setSize(400, 390);
         settingsFrame.add(humanB);
         settingsFrame.add(computerB);
+        settingsFrame.add(loadB);
         settingsFrame.setLayout(null);
         settingsFrame.setDefaultCloseOperation(EXIT_ON_CLOSE);
         settingsFrame.setResizable(false);
@@ -118,14 +178,18 @@ public class Main {
             d = new Damka((int)boardLengthComboBox.getSelectedItem(), (int)pawnRowsComboBox.getSelectedItem());
         else // Go for the classic variation
             d = new Damka(8, 3);
+        setDifficulty(easy, medium);
+
+        return d;
+    }
+
+    private static void setDifficulty(JRadioButton easy, JRadioButton medium) {
         if (easy.isSelected())
-            Computer.DEPTH_MAX = EASY;
+            Computer.comp.depthMax = EASY;
         else if (medium.isSelected())
-            Computer.DEPTH_MAX = MEDIUM;
+            Computer.comp.depthMax = MEDIUM;
         else
-            Computer.DEPTH_MAX = HARD;
-
-        Computer.comp.board = d;
-        return d;
+            Computer.comp.depthMax = HARD;
+        Computer.comp.timeBudget = THINK_TIME;
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package main;
+
+/**
+ * Moves packed into a long, so the search keeps them in primitive arrays.
+ * A capture is the whole streak, every hop of it, so it's made and taken back at once.
+ * Bits 0-12 hold the origin and the destination squares as (from * MAX_SQUARES + to),
+ * bit 13 is set if a pawn becomes a queen on the way, and bits 14-63 hold the captured pieces,
+ * one bit for every square off the edge of the board (see MoveTables.innerIndex):
+ * a captured piece is never on the edge, and a 12x12 board has 50 squares off it.
+ * @author Daniel Kanevsky
+ */
+final class Move {
+
+    private Move(){}
+
+    // "No move"
+    static final long NONE = -1;
+
+    // Number of dark squares on the biggest board (12x12)
+    private static final int MAX_SQUARES = 72;
+
+    private static final int ENDS_MASK = 0x1FFF;
+    private static final long PREMOTION = 1L << 13;
+    private static final int CAPTURED_SHIFT = 14;
+
+    // Bits of a move kept by the transposition table, enough to tell it among the moves of its position
+    private static final int KEY_MASK = 0x1FFFFF;
+
+    /**
+     * @param from: origin square
+     * @param to: destination square
+     * @param isPremotion: does a pawn become a queen by the move
+     * @param captured: bits of the inner squares of the captured pieces, 0 if this isn't a capture
+     * @return the packed move
+     */
+    static long of(int from, int to, boolean isPremotion, long captured)
+    {
+        return from * MAX_SQUARES + to | (isPremotion ? PREMOTION : 0) | captured << CAPTURED_SHIFT;
+    }
+
+    static int from(long move)
+    {
+        return ((int) move & ENDS_MASK) / MAX_SQUARES;
+    }
+
+    static int to(long move)
+    {
+        return ((int) move & ENDS_MASK) % MAX_SQUARES;
+    }
+
+    static boolean isPremotion(long move)
+    {
+        return (move & PREMOTION) != 0;
+    }
+
+    // Bits of the inner squares of the captured pieces, 0 if this isn't a capture
+    static long captured(long move)
+    {
+        return move >>> CAPTURED_SHIFT;
+    }
+
+    static boolean isCapture(long move)
+    {
+        return move >>> CAPTURED_SHIFT != 0;
+    }
+
+    /**
+     * @return the low bits of the move, which the transposition table keeps. Two moves of a position
+     *         only share them if they go the same way and capture alike among the first inner squares,
+     *         and no move shares the key of NONE
+     */
+    static int key(long move)
+    {
+        return (int) move & KEY_MASK;
+    }
+}
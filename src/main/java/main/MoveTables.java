@@ -0,0 +1,169 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed move generation tables of a board size.
+ * The tables are built once per LENGTH and shared by all the positions of that size.
+ * Every table is indexed by (square << 2 | dir), dir as in Position.DIRS.
+ * @author Daniel Kanevsky
+ */
+final class MoveTables {
+
+    // Tables of every board size built so far, by LENGTH
+    private static final MoveTables[] BUILT = new MoveTables[13];
+
+    // Height and width of the board
+    final int LENGTH;
+    // Number of dark squares on the board
+    final int SQUARES;
+
+    // Row and column of every square
+    final int[] rowOf;
+    final int[] colOf;
+
+    // The adjacent square in the direction, NONE at the edge
+    final int[] neighbour;
+    // The landing square of a pawn capture in the direction, NONE if it's off the board
+    final int[] jump;
+    // The squares along the diagonal in the direction, as a bitboard of two words
+    final long[][] rayMasks;
+
+    // A captured piece is never on the edge: the index of every square off it, NONE on the edge,
+    // and the square of every index
+    final int[] innerIndex;
+    final int[] innerSquare;
+
+    // Captures of all the pawns at once, by (dir << 1 | group). A step to the adjacent square adds
+    // one of two numbers to the index, by the parity of the row on a board of even length, so the squares
+    // of a direction are split into two groups with a step each
+    // The squares a pawn can capture from, two words each
+    final long[][] captureFrom = new long[8][2];
+    // The index difference to the adjacent square and to the landing square of the group
+    final int[] step = new int[8];
+    final int[] leap = new int[8];
+
+    private MoveTables(int length)
+    {
+        LENGTH = length;
+        SQUARES = length * length / 2;
+        rowOf = new int[SQUARES];
+        colOf = new int[SQUARES];
+        neighbour = new int[SQUARES << 2];
+        jump = new int[SQUARES << 2];
+        rayMasks = new long[SQUARES << 2][2];
+        innerIndex = new int[SQUARES];
+
+        for (int i = 0; i < LENGTH; i++) {
+            for (int j = 1 - i % 2; j < LENGTH; j += 2) {
+                rowOf[square(i, j)] = i;
+                colOf[square(i, j)] = j;
+            }
+        }
+
+        int[] inners = new int[SQUARES];
+        int inner = 0;
+        for (int square = 0; square < SQUARES; square++)
+        {
+            boolean isEdge = rowOf[square] == 0 || rowOf[square] == LENGTH - 1
+                    || colOf[square] == 0 || colOf[square] == LENGTH - 1;
+            innerIndex[square] = isEdge ? Position.NONE : inner;
+            if (!isEdge)
+                inners[inner++] = square;
+        }
+        innerSquare = Arrays.copyOf(inners, inner);
+
+        for (int square = 0; square < SQUARES; square++)
+        {
+            for (int dir = 0; dir < 4; dir++)
+            {
+                int rowDir = Position.DIRS[dir][0];
+                int colDir = Position.DIRS[dir][1];
+                int rayLength = 0;
+                int row = rowOf[square] + rowDir;
+                int col = colOf[square] + colDir;
+                while (row >= 0 && row < LENGTH && col >= 0 && col < LENGTH)
+                {
+                    rayLength++;
+                    row += rowDir;
+                    col += colDir;
+                }
+
+                int[] ray = new int[rayLength];
+                for (int k = 0; k < rayLength; k++)
+                    ray[k] = square(rowOf[square] + (k + 1) * rowDir, colOf[square] + (k + 1) * colDir);
+
+                for (int to : ray)
+                    rayMasks[square << 2 | dir][to >>> 6] |= 1L << to;
+                neighbour[square << 2 | dir] = rayLength >= 1 ? ray[0] : Position.NONE;
+                jump[square << 2 | dir] = rayLength >= 2 ? ray[1] : Position.NONE;
+
+                if (rayLength >= 2)
+                {
+                    int group = dir << 1;
+                    if (step[group] != 0 && step[group] != ray[0] - square)
+                        group++;
+                    step[group] = ray[0] - square;
+                    leap[group] = ray[1] - square;
+                    captureFrom[group][square >>> 6] |= 1L << square;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shift a bitboard so every square gets the bit of the square offset from it
+     * @param low: first word of the bitboard
+     * @param high: second word of the bitboard
+     * @param offset: index difference, between -63 and 63 but 0
+     * @return the first word of the shifted bitboard
+     */
+    static long shiftedLow(long low, long high, int offset)
+    {
+        return offset > 0 ? low >>> offset | high << (64 - offset) : low << -offset;
+    }
+
+    /**
+     * @return the second word of the shifted bitboard, see shiftedLow
+     */
+    static long shiftedHigh(long low, long high, int offset)
+    {
+        return offset > 0 ? high >>> offset : high << -offset | low >>> (64 + offset);
+    }
+
+    /**
+     * Find the first taken square along a ray, without walking it: the first two directions lead down
+     * the rows, to higher squares, so it's the lowest taken bit of the ray, and the highest one otherwise
+     * @param takenLow: first word of the bitboard of the taken squares
+     * @param takenHigh: second word of the bitboard of the taken squares
+     * @return the square, Position.NONE if the ray is empty to the edge
+     */
+    int firstBlocker(int square, int dir, long takenLow, long takenHigh)
+    {
+        long[] ray = rayMasks[square << 2 | dir];
+        long low = ray[0] & takenLow;
+        long high = ray[1] & takenHigh;
+        if ((low | high) == 0)
+            return Position.NONE;
+        if (dir < 2)
+            return low != 0 ? Long.numberOfTrailingZeros(low) : 64 + Long.numberOfTrailingZeros(high);
+        return high != 0 ? 127 - Long.numberOfLeadingZeros(high) : 63 - Long.numberOfLeadingZeros(low);
+    }
+
+    /**
+     * @param length: Length of the board (width and height)
+     * @return the tables of the board size, built on the first call
+     */
+    static synchronized MoveTables of(int length)
+    {
+        if (BUILT[length] == null)
+            BUILT[length] = new MoveTables(length);
+        return BUILT[length];
+    }
+
+    // Index of a dark square
+    int square(int row, int col)
+    {
+        return (row * LENGTH + col) >> 1;
+    }
+}
@@ -0,0 +1,510 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Games in Portable Draughts Notation (PDN), for Russian draughts (GameType 25) with algebraic squares.
+ * A game is its tags, e.g. [White "Human"], then its moves ("1. c3-d4 f6-e5 2. d4xf6 g7xe5 ...") and its result.
+ * Captures are read with 'x' or ':' between the landings, by their ends alone or with every landing.
+ * Comments, variations, NAGs and move strength marks are skipped, since a game is replayed by its main line.
+ * A board of another size is written as GameType "25,W,length,length,A0,0", and starts from the pawn rows
+ * of its variant unless there is a FEN tag. A game with pawn rows other than its variant's
+ * has them in a PawnRows tag, next to the FEN of its start.
+ * The parser reads a game at a time from a stream, so a collection of any size is read in constant memory.
+ * Usage: java main.Pdn check games [output]
+ *   replays every game of the file, reporting the illegal ones, and writes the legal ones to output if given,
+ *   with every capture written with all its landings.
+ * @author Daniel Kanevsky
+ */
+final class Pdn {
+
+    private Pdn(){}
+
+    // Results, the points of white first
+    static final String WHITE_WIN = "2-0";
+    static final String BLACK_WIN = "0-2";
+    static final String DRAW = "1-1";
+    static final String UNKNOWN = "*";
+
+    // The game type of Russian draughts, and the board length it has unless the tag tells another
+    private static final String RUSSIAN = "25";
+    private static final int DEFAULT_LENGTH = 8;
+
+    // Longest line of moves written
+    private static final int MAX_LINE = 79;
+
+    /**
+     * A game: its tags, its moves as they are written and its result
+     */
+    static final class Game
+    {
+        final Map<String, String> tags = new LinkedHashMap<>();
+        final List<String> moves = new ArrayList<>();
+        String result = UNKNOWN;
+
+        /**
+         * Tag the board size of the start position, and the position itself unless it's the start of its variant,
+         * with its pawn rows unless they are those of its variant
+         */
+        void setStart(Position start)
+        {
+            tags.put("GameType", start.LENGTH == DEFAULT_LENGTH ? RUSSIAN
+                    : RUSSIAN + ",W," + start.LENGTH + "," + start.LENGTH + ",A0,0");
+            Position variant = new Position(start.LENGTH, Pdn.pawnRows(start.LENGTH));
+            variant.setStartPosition();
+            if (!start.toFen().equals(variant.toFen()))
+            {
+                tags.put("SetUp", "1");
+                tags.put("FEN", start.toFen());
+            }
+            if (start.PAWN_ROWS != Pdn.pawnRows(start.LENGTH))
+                tags.put("PawnRows", Integer.toString(start.PAWN_ROWS));
+        }
+
+        /**
+         * @return the board length by the GameType tag
+         * @throws IllegalArgumentException if the game isn't Russian draughts on a board this program plays
+         */
+        int length()
+        {
+            String type = tags.get("GameType");
+            if (type == null)
+                return DEFAULT_LENGTH;
+            String[] fields = type.split(",");
+            if (!fields[0].trim().equals(RUSSIAN))
+                throw new IllegalArgumentException("Not Russian draughts: GameType " + type);
+            if (fields.length < 3)
+                return DEFAULT_LENGTH;
+            int length;
+            try {
+                length = Integer.parseInt(fields[2].trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad GameType " + type);
+            }
+            if (length < 4 || length > 12)
+                throw new IllegalArgumentException("Unsupported board in GameType " + type);
+            return length;
+        }
+
+        /**
+         * @return the pawn rows of the game by its PawnRows tag, those of its variant if there is none
+         * @throws IllegalArgumentException if the board of the game can't have them
+         */
+        int pawnRows()
+        {
+            int length = length();
+            String rows = tags.get("PawnRows");
+            if (rows == null)
+                return Pdn.pawnRows(length);
+            int pawnRows;
+            try {
+                pawnRows = Integer.parseInt(rows.trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad PawnRows " + rows);
+            }
+            // The pawn rows the settings frame offers
+            if (pawnRows < 1 || pawnRows >= (length + 1) / 2)
+                throw new IllegalArgumentException("Unsupported PawnRows " + rows + " on a board of " + length);
+            return pawnRows;
+        }
+
+        /**
+         * @return the position the game starts from, by its FEN tag or the start of its variant
+         */
+        Position start()
+        {
+            int length = length();
+            int pawnRows = pawnRows();
+            String fen = tags.get("FEN");
+            if (fen != null)
+            {
+                // The FEN of a tag may end with a full stop
+                fen = fen.trim();
+                if (fen.endsWith("."))
+                    fen = fen.substring(0, fen.length() - 1);
+                return Position.fromFen(fen, length, pawnRows);
+            }
+            Position start = new Position(length, pawnRows);
+            start.setStartPosition();
+            return start;
+        }
+    }
+
+    /**
+     * @return the pawn rows of the variant of a board length: all the rows but the two in the middle
+     */
+    static int pawnRows(int length)
+    {
+        return (length - 2) / 2;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Replay">
+    /**
+     * Play the moves of the game from its start position, so every one of them is checked
+     * @return the position after the last move
+     * @throws IllegalArgumentException on a move which isn't possible, or a start the board can't have
+     */
+    static Position replay(Game game)
+    {
+        return replay(game, null);
+    }
+
+    /**
+     * Play the moves of the game from its start position, naming every one of them
+     * with all the landings of its captures
+     * @param played: list the names of the moves are added to, null - none
+     * @return the position after the last move
+     * @throws IllegalArgumentException on a move which isn't possible, or a start the board can't have
+     */
+    static Position replay(Game game, List<String> played)
+    {
+        Position position = game.start();
+        boolean isBlackFirst = position.turn;
+        for (int ply = 0; ply < game.moves.size(); ply++)
+        {
+            String name = game.moves.get(ply);
+            long move = position.parseMove(name);
+            if (move == Move.NONE)
+                throw new IllegalArgumentException("Illegal move " + moveNumber(ply, isBlackFirst) + " " + name);
+            if (played != null)
+                played.add(position.moveName(move));
+            position.makeMove(move);
+        }
+        return position;
+    }
+
+    // The number of the move of a ply, "12." for white and "12..." for black
+    private static String moveNumber(int ply, boolean isBlackFirst)
+    {
+        int number = (ply + (isBlackFirst ? 1 : 0)) / 2 + 1;
+        boolean isBlack = ply % 2 == 0 == isBlackFirst;
+        return number + (isBlack ? "..." : ".");
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Writing">
+    /**
+     * Write the game: its tags with its result, then its moves numbered and wrapped, and a blank line
+     */
+    static void write(Game game, Writer out) throws IOException
+    {
+        for (Map.Entry<String, String> tag : game.tags.entrySet())
+            writeTag(tag.getKey(), tag.getKey().equals("Result") ? game.result : tag.getValue(), out);
+        if (!game.tags.containsKey("Result"))
+            writeTag("Result", game.result, out);
+        out.write('\n');
+
+        String fen = game.tags.get("FEN");
+        boolean isBlackFirst = fen != null && fen.trim().startsWith("B");
+        StringBuilder line = new StringBuilder();
+        for (int ply = 0; ply < game.moves.size(); ply++)
+        {
+            // A white move, or the first move of the game, is numbered
+            boolean isBlack = ply % 2 == 0 == isBlackFirst;
+            String word = game.moves.get(ply);
+            if (!isBlack || ply == 0)
+                word = moveNumber(ply, isBlackFirst) + " " + word;
+            wrap(line, word, out);
+        }
+        wrap(line, game.result, out);
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    private static void writeTag(String name, String value, Writer out) throws IOException
+    {
+        out.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+
+    // Add the word to the line, writing the line first if the word doesn't fit in it
+    private static void wrap(StringBuilder line, String word, Writer out) throws IOException
+    {
+        if (line.length() > 0 && line.length() + 1 + word.length() > MAX_LINE)
+        {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0)
+            line.append(' ');
+        line.append(word);
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Parsing">
+    /**
+     * Reads the games of a stream one at a time, keeping nothing of the games before
+     */
+    static final class Parser implements Closeable
+    {
+        // No character is peeked
+        private static final int NOTHING = -2;
+
+        private final BufferedReader in;
+        private int peeked = NOTHING;
+        private int line = 1; // Line of the next character, for the errors
+        private boolean isLineStart = true;
+        private final StringBuilder word = new StringBuilder();
+
+        Parser(Reader in)
+        {
+            this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        }
+
+        /**
+         * Read the next game. A game ends with its result, or where the tags of the next game start
+         * @return the game, null at the end of the stream
+         * @throws IllegalArgumentException on a game with a malformed tag, the parser goes on with the next game
+         */
+        Game next() throws IOException
+        {
+            Game game = new Game();
+            boolean isEmpty = true;
+            boolean hasMoves = false;
+            String error = null; // The first malformed tag, the rest of its game is read before it's thrown
+            for (int c = peek(); c != -1; c = peek())
+            {
+                if (c == '%' && isLineStart)
+                    skipTo('\n'); // An escaped line, for other programs
+                else if (Character.isWhitespace(c))
+                    read();
+                else if (c == '{')
+                    skipTo('}');
+                else if (c == ';')
+                    skipTo('\n');
+                else if (c == '(')
+                    skipVariation();
+                else if (c == '[')
+                {
+                    // The tags of the next game, after a game without a result
+                    if (hasMoves)
+                        break;
+                    try {
+                        readTag(game);
+                    } catch (IllegalArgumentException ex) {
+                        if (error == null)
+                            error = ex.getMessage();
+                    }
+                    isEmpty = false;
+                }
+                else
+                {
+                    String text = readWord();
+                    isEmpty = false;
+                    String result = result(text);
+                    if (result != null)
+                    {
+                        game.result = result;
+                        return checked(game, error);
+                    }
+                    String move = move(text);
+                    if (!move.isEmpty())
+                    {
+                        game.moves.add(move);
+                        hasMoves = true;
+                    }
+                }
+            }
+            if (isEmpty)
+                return null;
+            String result = result(game.tags.getOrDefault("Result", UNKNOWN));
+            game.result = result != null ? result : UNKNOWN;
+            return checked(game, error);
+        }
+
+        // The game, unless a tag of it was malformed
+        private static Game checked(Game game, String error)
+        {
+            if (error != null)
+                throw new IllegalArgumentException(error);
+            return game;
+        }
+
+        private int peek() throws IOException
+        {
+            if (peeked == NOTHING)
+                peeked = in.read();
+            return peeked;
+        }
+
+        private int read() throws IOException
+        {
+            int c = peek();
+            peeked = NOTHING;
+            if (c == '\n')
+                line++;
+            isLineStart = c == '\n';
+            return c;
+        }
+
+        // Skip the characters up to the end character, and the end character
+        private void skipTo(char end) throws IOException
+        {
+            for (int c = read(); c != end && c != -1; c = read())
+                ;
+        }
+
+        // Skip a variation, with the variations and comments in it
+        private void skipVariation() throws IOException
+        {
+            read();
+            for (int depth = 1; depth > 0 && peek() != -1; )
+            {
+                int c = read();
+                if (c == '{')
+                    skipTo('}');
+                else if (c == '(')
+                    depth++;
+                else if (c == ')')
+                    depth--;
+            }
+        }
+
+        // [Name "value"], a backslash escapes the next character of the value
+        private void readTag(Game game) throws IOException
+        {
+            int tagLine = line;
+            read();
+            skipSpaces();
+            StringBuilder name = new StringBuilder();
+            while (peek() != -1 && !Character.isWhitespace(peek()) && peek() != '"' && peek() != ']')
+                name.append((char) read());
+            skipSpaces();
+            if (name.length() == 0 || read() != '"')
+                throw new IllegalArgumentException("Bad tag on line " + tagLine);
+            StringBuilder value = new StringBuilder();
+            for (int c = read(); c != '"'; c = read())
+            {
+                if (c == '\\')
+                    c = read();
+                if (c == -1 || c == '\n')
+                    throw new IllegalArgumentException("Bad tag on line " + tagLine);
+                value.append((char) c);
+            }
+            skipSpaces();
+            if (read() != ']')
+                throw new IllegalArgumentException("Bad tag on line " + tagLine);
+            game.tags.put(name.toString(), value.toString());
+        }
+
+        private void skipSpaces() throws IOException
+        {
+            while (peek() != -1 && Character.isWhitespace(peek()))
+                read();
+        }
+
+        // The characters up to a space or a character which starts something else, at least one
+        private String readWord() throws IOException
+        {
+            word.setLength(0);
+            do
+                word.append((char) read());
+            while (peek() != -1 && !Character.isWhitespace(peek()) && "[]{}();".indexOf(peek()) < 0);
+            return word.toString();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    // The result a word stands for, as this class writes it; null if it isn't a result
+    private static String result(String text)
+    {
+        switch (text)
+        {
+            case "2-0":
+            case "1-0":
+                return WHITE_WIN;
+            case "0-2":
+            case "0-1":
+                return BLACK_WIN;
+            case "1-1":
+            case "1/2-1/2":
+                return DRAW;
+            case "*":
+                return UNKNOWN;
+            default:
+                return null;
+        }
+    }
+
+    // The move of a word, without its number and its strength marks ("12.c3-d4!" is "c3-d4"); empty if there is none
+    private static String move(String text)
+    {
+        if (text.startsWith("$"))
+            return "";
+        int start = 0;
+        while (start < text.length() && Character.isDigit(text.charAt(start)))
+            start++;
+        if (start < text.length() && text.charAt(start) == '.')
+        {
+            while (start < text.length() && text.charAt(start) == '.')
+                start++;
+        }
+        else
+            start = 0;
+        int end = text.length();
+        while (end > start && (text.charAt(end - 1) == '!' || text.charAt(end - 1) == '?'))
+            end--;
+        return text.substring(start, end);
+    }
+    //</editor-fold>
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2 || !args[0].equals("check"))
+        {
+            System.err.println("Usage: java main.Pdn check games [output]");
+            System.exit(2);
+        }
+
+        long games = 0, illegal = 0, moves = 0;
+        try (Parser parser = new Parser(Files.newBufferedReader(Paths.get(args[1])));
+             Writer out = args.length > 2 ? Files.newBufferedWriter(Paths.get(args[2])) : null)
+        {
+            while (true)
+            {
+                Game game;
+                try {
+                    game = parser.next();
+                } catch (IllegalArgumentException ex) {
+                    illegal++;
+                    System.out.println("Game " + (games + illegal) + ": " + ex.getMessage());
+                    continue;
+                }
+                if (game == null)
+                    break;
+                List<String> played = new ArrayList<>();
+                try {
+                    replay(game, played);
+                } catch (IllegalArgumentException ex) {
+                    illegal++;
+                    System.out.println("Game " + (games + illegal) + ": " + ex.getMessage());
+                    continue;
+                }
+                games++;
+                moves += played.size();
+                if (out != null)
+                {
+                    game.moves.clear();
+                    game.moves.addAll(played);
+                    write(game, out);
+                }
+            }
+        }
+        System.out.println("Legal games " + games + " (" + moves + " moves), illegal games " + illegal);
+    }
+}
@@ -0,0 +1,160 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Perft: count the move paths to a depth, to check the move generator and make/unmake
+ * against known counts, and to time them.
+ * A depth is a move, a capture with every hop of its streak. Captures which end on the same square
+ * having captured the same pieces are one move, whichever way they went, so the counts are below
+ * those of perft tables which count every path of a capture.
+ * From the 8x8 start with 3 pawn rows, depth 1 to 9: 7, 49, 302, 1469, 7482, 37986, 190146, 929899, 4570586.
+ * With "paths" every path of a capture is counted, as perft tables count them: from the 8x8 start
+ * depth 8 is 929905 and depth 9 is 4570667.
+ * Usage: java main.Perft length pawnRows depth [paths] [divide] [fen]
+ * Without a FEN the count starts from the start position. Divide prints the count below every root move.
+ * @author Daniel Kanevsky
+ */
+final class Perft {
+
+    private final Position position;
+    // Move arena, the moves of every ply after the moves of the plies before it
+    private long[] moves = new long[1024];
+
+    Perft(Position position)
+    {
+        this.position = position;
+    }
+
+    /**
+     * @param depth: number of moves to play, 0 or more
+     * @return the number of move paths of the length from the position
+     */
+    long count(int depth)
+    {
+        if (depth < 0)
+            throw new IllegalArgumentException("Negative perft depth " + depth);
+        return count(depth, 0);
+    }
+
+    /**
+     * Count the paths below every move of the position
+     * @param depth: number of moves to play, the root move included, 1 or more
+     * @return the count of every move, by the order of generateMoves
+     */
+    long[] divide(int depth)
+    {
+        if (depth < 1)
+            throw new IllegalArgumentException("Perft divide needs a depth of 1 or more, not " + depth);
+        int end = generateMoves(0);
+        long[] counts = new long[end];
+        for (int i = 0; i < end; i++)
+        {
+            long move = moves[i];
+            position.makeMove(move);
+            counts[i] = count(depth - 1, end);
+            position.undoMove(move);
+        }
+        return counts;
+    }
+
+    private long count(int depth, int start)
+    {
+        if (depth == 0)
+            return 1;
+        int end = generateMoves(start);
+        // The last move needs no make/unmake
+        if (depth == 1)
+            return end - start;
+
+        long nodes = 0;
+        for (int i = start; i < end; i++)
+        {
+            long move = moves[i];
+            position.makeMove(move);
+            nodes += count(depth - 1, end);
+            position.undoMove(move);
+        }
+        return nodes;
+    }
+
+    private int generateMoves(int start)
+    {
+        if (start + position.roomForMoves() > moves.length)
+            moves = Arrays.copyOf(moves, Math.max(moves.length * 2, start + position.roomForMoves()));
+        int end = position.generateMoves(moves, start);
+        // More captures than the room of a position, generated again once they fit
+        if (end > moves.length)
+        {
+            moves = Arrays.copyOf(moves, end);
+            end = position.generateMoves(moves, start);
+        }
+        return end;
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: java main.Perft length pawnRows depth [paths] [divide] [fen]");
+            System.exit(2);
+        }
+        int length = Integer.parseInt(args[0]);
+        int pawnRows = Integer.parseInt(args[1]);
+        int depth = Integer.parseInt(args[2]);
+        if (depth < 1)
+        {
+            System.err.println("The depth must be 1 or more");
+            System.exit(2);
+        }
+        int arg = 3;
+        boolean isEveryPath = args.length > arg && args[arg].equals("paths");
+        if (isEveryPath)
+            arg++;
+        boolean isDivide = args.length > arg && args[arg].equals("divide");
+        if (isDivide)
+            arg++;
+        String fen = args.length > arg ? args[arg] : null;
+
+        Position position;
+        if (fen != null)
+            position = Position.fromFen(fen, length, pawnRows);
+        else
+        {
+            position = new Position(length, pawnRows);
+            position.setStartPosition();
+        }
+        position.isEveryPath = isEveryPath;
+        System.out.println(position.toFen());
+        Perft perft = new Perft(position);
+
+        if (isDivide)
+        {
+            long start = System.nanoTime();
+            long[] counts = perft.divide(depth);
+            long time = System.nanoTime() - start;
+            long total = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                System.out.println(position.moveName(perft.moves[i]) + " " + counts[i]);
+                total += counts[i];
+            }
+            System.out.println(report(depth, total, time));
+            return;
+        }
+
+        for (int d = 1; d <= depth; d++)
+        {
+            long start = System.nanoTime();
+            long nodes = perft.count(d);
+            System.out.println(report(d, nodes, System.nanoTime() - start));
+        }
+    }
+
+    private static String report(int depth, long nodes, long nanos)
+    {
+        return String.format(Locale.ROOT, "depth %2d  nodes %14d  time %9.1f ms  %12.0f nodes/s",
+                depth, nodes, nanos / 1e6, nodes * 1e9 / Math.max(nanos, 1));
+    }
+}
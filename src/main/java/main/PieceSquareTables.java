@@ -0,0 +1,77 @@
+package main;
+
+/**
+ * Values of every piece kind on every square of a board size, for black in centipawns, by the weights of a computer.
+ * The value of a position is the sum over its pieces, kept up to date by make/unmake,
+ * with one table for the start of the game and one for the endgame.
+ * A value holds the material of the piece and its positional terms:
+ * a pawn in the two rows before its premotion row (good in the endgame, bad before it),
+ * and a pawn guarding its back row before the endgame.
+ * @author Daniel Kanevsky
+ */
+final class PieceSquareTables {
+
+    // Height and width of the board
+    final int LENGTH;
+    // Number of rows filled with pawns for each side
+    final int PAWN_ROWS;
+    // The weights the values were built from, read once
+    final Weights weights;
+
+    // Value of every piece kind on every square, indexed by (kind * SQUARES + square)
+    final int[] opening;
+    final int[] endgame;
+
+    /**
+     * Build the tables of a board size
+     * @param length: Length of the board (width and height)
+     * @param pawnRows: Number of pawn rows each side has to begin with
+     * @param weights: weights of the evaluation terms
+     */
+    PieceSquareTables(int length, int pawnRows, Weights weights)
+    {
+        LENGTH = length;
+        PAWN_ROWS = pawnRows;
+        this.weights = weights;
+        MoveTables tables = MoveTables.of(length);
+        int squares = tables.SQUARES;
+        opening = new int[4 * squares];
+        endgame = new int[4 * squares];
+
+        for (int square = 0; square < squares; square++)
+        {
+            int row = tables.rowOf[square];
+            // Black pawns advance down the rows, so a white pawn on a row is a black pawn on the mirrored row
+            int openingPawn = Computer.PAWN_VALUE;
+            int endgamePawn = Computer.PAWN_VALUE;
+            if (row >= length - 3 && row < length - 1)
+            {
+                openingPawn += weights.centipawns(Weights.OPENING_ADVANCED_PAWN);
+                endgamePawn += weights.centipawns(Weights.ENDGAME_ADVANCED_PAWN);
+            }
+            if (row == 0)
+                openingPawn += weights.centipawns(Weights.BACK_ROW_PAWN);
+
+            int mirrored = tables.square(length - 1 - row, length - 1 - tables.colOf[square]);
+            opening[Position.BLACK_PAWN * squares + square] = openingPawn;
+            endgame[Position.BLACK_PAWN * squares + square] = endgamePawn;
+            opening[Position.WHITE_PAWN * squares + mirrored] = -openingPawn;
+            endgame[Position.WHITE_PAWN * squares + mirrored] = -endgamePawn;
+
+            // A queen is worth more than a pawn, even more before the endgame
+            int queen = Computer.PAWN_VALUE + weights.centipawns(Weights.QUEEN);
+            opening[Position.BLACK_QUEEN * squares + square] = queen + weights.centipawns(Weights.OPENING_QUEEN);
+            endgame[Position.BLACK_QUEEN * squares + square] = queen;
+            opening[Position.WHITE_QUEEN * squares + square] = -queen - weights.centipawns(Weights.OPENING_QUEEN);
+            endgame[Position.WHITE_QUEEN * squares + square] = -queen;
+        }
+    }
+
+    /**
+     * @return true if the tables were built for the board size and the weights
+     */
+    boolean fits(Position position, Weights weights)
+    {
+        return position.LENGTH == LENGTH && position.PAWN_ROWS == PAWN_ROWS && this.weights == weights;
+    }
+}
@@ -0,0 +1,1000 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A headless position of Shashki (Russian Checkers), searched by the A.I.
+ * The pieces are kept as bitboards over the dark squares (two words per board,
+ * since a 12x12 board has 72 dark squares), alongside a mailbox of the squares.
+ * Nothing here touches Swing, so the engine can run without a JFrame.
+ * Moves are packed longs (see Move), a capture with every hop of its streak, and make/unmake
+ * keep their own primitive undo stack, so searching a position allocates nothing once the stacks have grown.
+ * @author Daniel Kanevsky
+ */
+final class Position {
+
+    //<editor-fold defaultstate="collapsed" desc="Constants">
+    // Piece kinds, also the indices of the bitboards. Odd kinds are black, kinds >= WHITE_QUEEN are queens
+    static final int WHITE_PAWN = 0;
+    static final int BLACK_PAWN = 1;
+    static final int WHITE_QUEEN = 2;
+    static final int BLACK_QUEEN = 3;
+    // Mailbox values of squares without a living piece
+    static final int EMPTY = 4;
+    static final int DEAD = 5; // A piece captured by the capture under way, removed when it ends
+
+    // Square index of "no square"
+    static final int NONE = -1;
+
+    // Number of moves without captures or pawn pushes needed for a draw
+    static final int MOVES_FOR_DRAW = 15;
+
+    // Maximum amount of same-color pawns in a position where player can't move
+    static final int MAX_PAWNS_IN_STALEMATE = 5;
+
+    /**
+     * Direction vector for the diagonals. The first two lead black forward,
+     * the last two lead white forward.
+     */
+    static final int[][] DIRS = {
+        {1, 1},
+        {1, -1},
+        {-1, 1},
+        {-1, -1}
+    };
+    //</editor-fold>
+
+    // Height and width of the board
+    final int LENGTH;
+    // Number of rows filled with pawns for each side
+    final int PAWN_ROWS;
+    // Number of dark squares on the board
+    final int SQUARES;
+
+    // Move generation tables of the board size
+    final MoveTables tables;
+    // Row and column of every square
+    final int[] rowOf;
+    final int[] colOf;
+    private final int[] neighbour;
+    private final int[] jump;
+    private final long[][] rayMasks;
+
+    // Bitboards of every piece kind, two words each
+    final long[][] pieces = new long[4][2];
+    // Bitboard of the pieces captured by the capture under way: while a capture is generated,
+    // or in a streak the board is playing hop by hop
+    final long[] dead = new long[2];
+    // The empty squares of a ray found by openRay, two words
+    private final long[] open = new long[2];
+    // The landings of the hops of the capture being generated
+    private final int[] landings;
+    // The capture path() looks for, Move.NONE while generating, the landings it wants and the ones found
+    private long pathTarget = Move.NONE;
+    private int[] pathWanted;
+    private int[] pathFound;
+    // Generate a capture once for every path it takes, for perft to count the paths. Not copied
+    boolean isEveryPath;
+    // What stands on every square
+    final byte[] squares;
+
+    int whitePawnsLeft; // All white pieces, queens included
+    int blackPawnsLeft; // All black pieces, queens included
+    int whiteQueens;
+    int blackQueens;
+    // Piece-square values of the computer searching the position, and their sums over the pieces,
+    // kept up to date by make/unmake
+    PieceSquareTables scoreTables;
+    int openingScore;
+    int endgameScore;
+    int movesWithoutProgress;
+    boolean isForced; // Is the player forced to make a capture
+    boolean turn; // false - white to play; true - black to play
+    long hash; // Zobrist hash of the position, kept up to date by make/unmake
+
+    // Undo stack: the packed state before every move made, which of its captured pieces were queens
+    // (by the bits of the move) and the hash
+    private int[] undoStates = new int[64];
+    private long[] undoQueens = new long[64];
+    private long[] undoHash = new long[64];
+    private int undoTop;
+
+    /**
+     * Create an empty board
+     * @param length: Length of the board (width and height)
+     * @param pawnRows: Number of pawn rows each side has to begin with
+     */
+    Position(int length, int pawnRows)
+    {
+        LENGTH = length;
+        PAWN_ROWS = pawnRows;
+        tables = MoveTables.of(length);
+        SQUARES = tables.SQUARES;
+        rowOf = tables.rowOf;
+        colOf = tables.colOf;
+        neighbour = tables.neighbour;
+        jump = tables.jump;
+        rayMasks = tables.rayMasks;
+        squares = new byte[SQUARES];
+        Arrays.fill(squares, (byte) EMPTY);
+        // Every hop captures another piece
+        landings = new int[SQUARES];
+    }
+
+    /**
+     * Copy a position, without its undo stack
+     * @param other: the position to copy
+     */
+    Position(Position other)
+    {
+        this(other.LENGTH, other.PAWN_ROWS);
+        for (int kind = 0; kind < 4; kind++)
+            System.arraycopy(other.pieces[kind], 0, pieces[kind], 0, 2);
+        System.arraycopy(other.dead, 0, dead, 0, 2);
+        System.arraycopy(other.squares, 0, squares, 0, SQUARES);
+        whitePawnsLeft = other.whitePawnsLeft;
+        blackPawnsLeft = other.blackPawnsLeft;
+        whiteQueens = other.whiteQueens;
+        blackQueens = other.blackQueens;
+        scoreTables = other.scoreTables;
+        openingScore = other.openingScore;
+        endgameScore = other.endgameScore;
+        movesWithoutProgress = other.movesWithoutProgress;
+        isForced = other.isForced;
+        turn = other.turn;
+        hash = other.hash;
+    }
+
+    /**
+     * Set the pawns as in the beginning of the game, white to play
+     */
+    void setStartPosition()
+    {
+        for (int i = 0; i < LENGTH; i++) {
+            for (int j = 1 - i % 2; j < LENGTH; j += 2) {
+                if (i < PAWN_ROWS)
+                    put(i, j, BLACK_PAWN);
+                else if (i >= LENGTH - PAWN_ROWS)
+                    put(i, j, WHITE_PAWN);
+            }
+        }
+        turn = false;
+        isForced = false;
+        rehash();
+    }
+
+    /**
+     * Take every piece off the board and forget the state, so a position can be set up piece by piece
+     */
+    void clear()
+    {
+        for (int square = 0; square < SQUARES; square++)
+        {
+            if (squares[square] < EMPTY)
+                remove(square, squares[square]);
+            squares[square] = EMPTY;
+        }
+        dead[0] = 0;
+        dead[1] = 0;
+        movesWithoutProgress = 0;
+        isForced = false;
+        turn = false;
+        undoTop = 0;
+        rehash();
+    }
+
+    /**
+     * Recompute the hash from scratch, after the state was set directly
+     */
+    void rehash()
+    {
+        hash = 0;
+        for (int square = 0; square < SQUARES; square++)
+        {
+            if (squares[square] < EMPTY)
+                hash ^= Zobrist.PIECES[squares[square]][square];
+        }
+        hash ^= Zobrist.progress(movesWithoutProgress);
+        if (turn)
+            hash ^= Zobrist.TURN;
+    }
+
+    // Index of a dark square
+    int square(int row, int col)
+    {
+        return (row * LENGTH + col) >> 1;
+    }
+
+    /**
+     * @return the kind of the piece on the tile, EMPTY or DEAD
+     */
+    int pieceAt(int row, int col)
+    {
+        return squares[square(row, col)];
+    }
+
+    /**
+     * Place a living piece on an empty tile
+     */
+    void put(int row, int col, int kind)
+    {
+        add(square(row, col), kind);
+    }
+
+    /**
+     * Mark a tile as holding a piece captured in the streak the board is playing, see generateSteps
+     */
+    void putDead(int row, int col)
+    {
+        int square = square(row, col);
+        squares[square] = DEAD;
+        dead[square >>> 6] |= 1L << square;
+    }
+
+    private void add(int square, int kind)
+    {
+        squares[square] = (byte) kind;
+        pieces[kind][square >>> 6] |= 1L << square;
+        hash ^= Zobrist.PIECES[kind][square];
+        count(square, kind, 1);
+    }
+
+    private void remove(int square, int kind)
+    {
+        squares[square] = EMPTY;
+        pieces[kind][square >>> 6] &= ~(1L << square);
+        hash ^= Zobrist.PIECES[kind][square];
+        count(square, kind, -1);
+    }
+
+    // Update the counts and the piece-square sums by the piece kind on the square
+    private void count(int square, int kind, int delta)
+    {
+        if ((kind & 1) == 0)
+        {
+            whitePawnsLeft += delta;
+            if (kind == WHITE_QUEEN)
+                whiteQueens += delta;
+        }
+        else
+        {
+            blackPawnsLeft += delta;
+            if (kind == BLACK_QUEEN)
+                blackQueens += delta;
+        }
+        if (scoreTables != null)
+        {
+            openingScore += delta * scoreTables.opening[kind * SQUARES + square];
+            endgameScore += delta * scoreTables.endgame[kind * SQUARES + square];
+        }
+    }
+
+    /**
+     * Sum the piece-square values of the tables from now on
+     * @param tables: tables of this board size
+     */
+    void setScoreTables(PieceSquareTables tables)
+    {
+        scoreTables = tables;
+        openingScore = 0;
+        endgameScore = 0;
+        for (int square = 0; square < SQUARES; square++)
+        {
+            if (squares[square] < EMPTY)
+            {
+                openingScore += tables.opening[squares[square] * SQUARES + square];
+                endgameScore += tables.endgame[squares[square] * SQUARES + square];
+            }
+        }
+    }
+
+    /**
+     * Recount the pieces from the squares, to check the counts and sums make/unmake keep. Slow, for debugging
+     * @return true if every count is right
+     */
+    boolean areCountsConsistent()
+    {
+        Position recount = new Position(LENGTH, PAWN_ROWS);
+        for (int square = 0; square < SQUARES; square++)
+        {
+            if (squares[square] < EMPTY)
+                recount.count(square, squares[square], 1);
+        }
+        if (scoreTables != null)
+        {
+            System.arraycopy(squares, 0, recount.squares, 0, SQUARES);
+            recount.setScoreTables(scoreTables);
+        }
+        return recount.whitePawnsLeft == whitePawnsLeft && recount.blackPawnsLeft == blackPawnsLeft
+                && recount.whiteQueens == whiteQueens && recount.blackQueens == blackQueens
+                && recount.openingScore == openingScore && recount.endgameScore == endgameScore;
+    }
+
+    // Is the square content a living piece of the other color than kind
+    private static boolean isEnemy(int content, int kind)
+    {
+        return content < EMPTY && ((content ^ kind) & 1) == 1;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Notation">
+    /**
+     * Read a position written as a FEN tag of PDN with algebraic squares,
+     * e.g. "W:Wa1,c1,Kd4:Bb8,h8" - the player to move, then the white and the black pieces,
+     * where K marks a queen. Files are lettered from the left and ranks numbered from white's side.
+     * @param fen: the position
+     * @param length: Length of the board (width and height)
+     * @param pawnRows: Number of pawn rows each side had to begin with
+     * @return the position
+     * @throws IllegalArgumentException if the FEN is malformed or doesn't fit the board
+     */
+    static Position fromFen(String fen, int length, int pawnRows)
+    {
+        Position position = new Position(length, pawnRows);
+        String[] fields = fen.trim().split(":");
+        if (fields.length < 1 || !(fields[0].equals("W") || fields[0].equals("B")))
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        position.turn = fields[0].equals("B");
+
+        for (int i = 1; i < fields.length; i++)
+        {
+            String field = fields[i].trim();
+            if (field.isEmpty() || !(field.charAt(0) == 'W' || field.charAt(0) == 'B'))
+                throw new IllegalArgumentException("Bad FEN: " + fen);
+            int color = field.charAt(0) == 'W' ? WHITE_PAWN : BLACK_PAWN;
+            if (field.length() == 1)
+                continue;
+            for (String piece : field.substring(1).split(","))
+            {
+                piece = piece.trim();
+                int kind = color;
+                if (piece.startsWith("K"))
+                {
+                    kind += 2;
+                    piece = piece.substring(1);
+                }
+                int square = position.parseSquare(piece);
+                if (square == NONE || position.squares[square] != EMPTY)
+                    throw new IllegalArgumentException("Bad square " + piece + " in FEN: " + fen);
+                position.add(square, kind);
+            }
+        }
+        position.isForced = position.doesCaptureExist();
+        position.rehash();
+        return position;
+    }
+
+    /**
+     * @return the position as a FEN tag, see fromFen
+     */
+    String toFen()
+    {
+        StringBuilder fen = new StringBuilder(turn ? "B" : "W");
+        for (int color = WHITE_PAWN; color <= BLACK_PAWN; color++)
+        {
+            fen.append(':').append(color == WHITE_PAWN ? 'W' : 'B');
+            boolean first = true;
+            for (int square = 0; square < SQUARES; square++)
+            {
+                if (squares[square] >= EMPTY || (squares[square] & 1) != color)
+                    continue;
+                if (!first)
+                    fen.append(',');
+                if (squares[square] >= WHITE_QUEEN)
+                    fen.append('K');
+                fen.append(squareName(square));
+                first = false;
+            }
+        }
+        return fen.toString();
+    }
+
+    /**
+     * @return the move in algebraic notation, e.g. "c3-d4", or "c3xe5xg3" for a capture, with every landing
+     */
+    String moveName(long move)
+    {
+        if (!Move.isCapture(move))
+            return squareName(Move.from(move)) + "-" + squareName(Move.to(move));
+        StringBuilder name = new StringBuilder(squareName(Move.from(move)));
+        for (int landing : path(move))
+            name.append('x').append(squareName(landing));
+        return name.toString();
+    }
+
+    /**
+     * Find the move written in algebraic notation among the moves of the position
+     * @param name: the move, e.g. "c3-d4", or "c3xe5xg3" (or "c3:e5:g3") for a capture. A capture may be written
+     *              by its ends alone, "c3xg3", which names the one hop between them if there is one,
+     *              otherwise the first capture between them
+     * @return the packed move, Move.NONE if no such move is possible
+     */
+    long parseMove(String name)
+    {
+        String[] named = name.split("[-x:]");
+        if (named.length < 2)
+            return Move.NONE;
+        int[] path = new int[named.length - 1];
+        int from = parseSquare(named[0]);
+        for (int i = 0; i < path.length; i++)
+            path[i] = parseSquare(named[i + 1]);
+
+        long[] moves = generateMoves();
+        long byEnds = Move.NONE;
+        for (int i = 0; i < moves.length; i++)
+        {
+            if (Move.from(moves[i]) != from || Move.to(moves[i]) != path[path.length - 1])
+                continue;
+            if (!Move.isCapture(moves[i]) || findPath(moves[i], path) != null)
+                return moves[i];
+            if (path.length == 1 && byEnds == Move.NONE)
+                byEnds = moves[i];
+        }
+        return byEnds;
+    }
+
+    /**
+     * @return the algebraic name of the square, e.g. "c3"
+     */
+    String squareName(int square)
+    {
+        return (char) ('a' + colOf[square]) + Integer.toString(LENGTH - rowOf[square]);
+    }
+
+    /**
+     * @param name: algebraic name of a square, e.g. "c3"
+     * @return the square, NONE if the name isn't a dark square of this board
+     */
+    int parseSquare(String name)
+    {
+        if (name.length() < 2)
+            return NONE;
+        int col = name.charAt(0) - 'a';
+        int row;
+        try {
+            row = LENGTH - Integer.parseInt(name.substring(1));
+        } catch (NumberFormatException ex) {
+            return NONE;
+        }
+        if (row < 0 || row >= LENGTH || col < 0 || col >= LENGTH || (row + col) % 2 == 0)
+            return NONE;
+        return square(row, col);
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Move generation">
+    /**
+     * Generate all possible moves in the current position.
+     * A capture is generated whole, to the end of its streak, once for every square it can end on
+     * with every set of pieces it can capture on the way there.
+     * The number of captures has no small bound, so those which don't fit in the buffer are only counted:
+     * a buffer which is too short is grown to the index returned, and the moves generated again
+     * @param moves: buffer the moves are written to, with room for roomForMoves() moves after start
+     * @param start: index of the first move written
+     * @return the index after the last move written, more than moves.length if they didn't fit
+     */
+    int generateMoves(long[] moves, int start)
+    {
+        int end = start;
+        int side = turn ? 1 : 0;
+        for (int word = 0; word < 2; word++)
+        {
+            long own = pieces[WHITE_PAWN + side][word] | pieces[WHITE_QUEEN + side][word];
+            for (; own != 0; own &= own - 1)
+                end = generateMoves((word << 6) + Long.numberOfTrailingZeros(own), moves, end);
+        }
+        return end;
+    }
+
+    /**
+     * Generate the moves of a single piece, those generateMoves would generate for it
+     * @param square: square of a piece of the player to move
+     * @return the index after the last move written
+     */
+    int generateMoves(int square, long[] moves, int start)
+    {
+        if (isForced)
+            return generateCaptures(square, moves, start);
+        return generateQuietMoves(square, moves, start);
+    }
+
+    /**
+     * Generate all possible moves in the current position, for the callers which aren't searching
+     * @return the moves, in an array of their number
+     */
+    long[] generateMoves()
+    {
+        long[] moves = new long[roomForMoves()];
+        int end = generateMoves(moves, 0);
+        if (end > moves.length)
+        {
+            moves = new long[end];
+            end = generateMoves(moves, 0);
+        }
+        return Arrays.copyOf(moves, end);
+    }
+
+    /**
+     * @return the room a buffer of moves needs: an upper bound of the quiet moves in a position of this
+     *         board size, and more than the captures of any position but a few made up ones
+     */
+    int roomForMoves()
+    {
+        // Every piece moves along two diagonals at most. Captures go to those squares as well,
+        // but there may be several sets of pieces to capture on the way to a square
+        return SQUARES * 2 * (LENGTH - 1);
+    }
+
+    /**
+     * Find the squares the piece can step to next, for the board which plays a capture hop by hop:
+     * its quiet moves, or the landings of its next hop, with the pieces captured so far marked dead
+     * and the square the capture started from empty.
+     * A queen which can go on capturing must land on a square it goes on from (Based on the official rules)
+     * @param square: square of a piece of the player to move
+     * @param steps: buffer the squares are written to, with room for SQUARES squares after start
+     * @return the index after the last square written
+     */
+    int generateSteps(int square, int[] steps, int start)
+    {
+        int end = start;
+        if (!isForced)
+        {
+            long[] moves = new long[roomForMoves()];
+            int quiet = generateQuietMoves(square, moves, 0);
+            for (int i = 0; i < quiet; i++)
+                steps[end++] = Move.to(moves[i]);
+            return end;
+        }
+
+        int kind = squares[square];
+        long takenLow = taken(0) & ~(square < 64 ? 1L << square : 0);
+        long takenHigh = taken(1) & ~(square < 64 ? 0 : 1L << square);
+        for (int dir = 0; dir < 4; dir++)
+        {
+            int enemy = hop(square, dir, kind, takenLow, takenHigh);
+            if (enemy == NONE)
+                continue;
+            byte enemyKind = squares[enemy];
+            squares[enemy] = DEAD;
+            keepGoingOn(kind, takenLow, takenHigh);
+            squares[enemy] = enemyKind;
+            for (int word = 0; word < 2; word++)
+                for (long bits = open[word]; bits != 0; bits &= bits - 1)
+                    steps[end++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        return end;
+    }
+
+    private int generateQuietMoves(int square, long[] moves, int end)
+    {
+        int kind = squares[square];
+        if (kind < WHITE_QUEEN)
+        {
+            int forward = turn ? 0 : 2;
+            for (int dir = forward; dir < forward + 2; dir++)
+            {
+                int to = neighbour[square << 2 | dir];
+                if (to != NONE && squares[to] == EMPTY)
+                    moves[end++] = Move.of(square, to, rowOf[to] == premotionRow(kind), 0);
+            }
+            return end;
+        }
+
+        // Every empty square before the first piece of every ray
+        long takenLow = taken(0);
+        long takenHigh = taken(1);
+        for (int dir = 0; dir < 4; dir++)
+        {
+            openRay(square, dir, takenLow, takenHigh);
+            for (int word = 0; word < 2; word++)
+                for (long bits = open[word]; bits != 0; bits &= bits - 1)
+                    moves[end++] = Move.of(square, (word << 6) + Long.numberOfTrailingZeros(bits), false, 0);
+        }
+        return end;
+    }
+
+    /**
+     * Generate the captures of a single piece, every one to the end of its streak (Based on the official rules):
+     * the captured pieces stay on the board until the capture ends, so none is captured twice and they block
+     * the way; a pawn which reaches the last row becomes a queen and captures on as one; and a queen which
+     * can go on capturing must land on a square it goes on from.
+     */
+    private int generateCaptures(int square, long[] moves, int end)
+    {
+        int kind = squares[square];
+        // The piece leaves its square, which is empty for the rest of the capture
+        long takenLow = taken(0) & ~(square < 64 ? 1L << square : 0);
+        long takenHigh = taken(1) & ~(square < 64 ? 0 : 1L << square);
+        squares[square] = EMPTY;
+        end = captureOn(square, square, kind, false, 0, takenLow, takenHigh, moves, end, end);
+        squares[square] = (byte) kind;
+        return end;
+    }
+
+    /**
+     * Follow a capture hop by hop, writing every way it ends
+     * @param from: square the capture started from
+     * @param square: square the piece landed on by the hops so far
+     * @param kind: kind of the piece now, a queen once a pawn became one
+     * @param isPremotion: did a pawn become a queen by the hops so far
+     * @param hops: number of hops so far, whose landings are in landings
+     * @param first: index of the first capture of the piece, those after it are checked for a capture found twice
+     * @return the index after the last move written
+     */
+    private int captureOn(int from, int square, int kind, boolean isPremotion, int hops,
+                          long takenLow, long takenHigh, long[] moves, int first, int end)
+    {
+        boolean hasHop = false;
+        for (int dir = 0; dir < 4; dir++)
+        {
+            int enemy = hop(square, dir, kind, takenLow, takenHigh);
+            if (enemy == NONE)
+                continue;
+            hasHop = true;
+
+            // The enemy dies, but stays on the board until the capture ends
+            byte enemyKind = squares[enemy];
+            squares[enemy] = DEAD;
+            dead[enemy >>> 6] |= 1L << enemy;
+            if (kind < WHITE_QUEEN)
+            {
+                // A single landing, the capture ends there if it finds no hop from it
+                int to = jump[square << 2 | dir];
+                boolean isPremoted = rowOf[to] == premotionRow(kind);
+                landings[hops] = to;
+                end = captureOn(from, to, isPremoted ? kind + 2 : kind, isPremotion || isPremoted, hops + 1,
+                        takenLow, takenHigh, moves, first, end);
+            }
+            else
+            {
+                boolean goesOn = keepGoingOn(kind, takenLow, takenHigh);
+                long landingLow = open[0];
+                long landingHigh = open[1];
+                for (int word = 0; word < 2; word++)
+                {
+                    for (long bits = word == 0 ? landingLow : landingHigh; bits != 0; bits &= bits - 1)
+                    {
+                        int to = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        landings[hops] = to;
+                        if (goesOn)
+                            end = captureOn(from, to, kind, isPremotion, hops + 1, takenLow, takenHigh, moves, first, end);
+                        else
+                            end = addCapture(from, to, isPremotion, hops + 1, moves, first, end);
+                    }
+                }
+            }
+            dead[enemy >>> 6] &= ~(1L << enemy);
+            squares[enemy] = enemyKind;
+        }
+        if (!hasHop && hops > 0)
+            end = addCapture(from, square, isPremotion, hops, moves, first, end);
+        return end;
+    }
+
+    /**
+     * Find the enemy the piece captures by a hop in the direction, and the squares it can land on behind it
+     * @return the enemy, with the landings in open; NONE if the piece can't capture in the direction
+     */
+    private int hop(int square, int dir, int kind, long takenLow, long takenHigh)
+    {
+        int enemy;
+        if (kind < WHITE_QUEEN)
+        {
+            enemy = neighbour[square << 2 | dir];
+            int to = jump[square << 2 | dir];
+            if (to == NONE || !isEnemy(squares[enemy], kind) || isTaken(to, takenLow, takenHigh))
+                return NONE;
+            open[0] = 0;
+            open[1] = 0;
+            open[to >>> 6] = 1L << to;
+            return enemy;
+        }
+
+        // The landings are the empty squares behind the enemy, up to the next piece
+        enemy = tables.firstBlocker(square, dir, takenLow, takenHigh);
+        if (enemy == NONE || !isEnemy(squares[enemy], kind))
+            return NONE;
+        openRay(enemy, dir, takenLow, takenHigh);
+        return (open[0] | open[1]) != 0 ? enemy : NONE;
+    }
+
+    /**
+     * Keep the landings in open which the capture goes on from, the enemy of the hop marked dead
+     * @param kind: kind of the piece before it lands, a pawn becomes a queen on the last row
+     * @return true if the capture goes on from any landing, false if it ends on every one of them
+     */
+    private boolean keepGoingOn(int kind, long takenLow, long takenHigh)
+    {
+        long goOnLow = 0;
+        long goOnHigh = 0;
+        for (int word = 0; word < 2; word++)
+        {
+            for (long bits = open[word]; bits != 0; bits &= bits - 1)
+            {
+                int to = (word << 6) + Long.numberOfTrailingZeros(bits);
+                int landed = kind < WHITE_QUEEN && rowOf[to] == premotionRow(kind) ? kind + 2 : kind;
+                if (canCapture(to, landed, takenLow, takenHigh))
+                {
+                    if (word == 0)
+                        goOnLow |= 1L << to;
+                    else
+                        goOnHigh |= 1L << to;
+                }
+            }
+        }
+        if ((goOnLow | goOnHigh) == 0)
+            return false;
+        open[0] = goOnLow;
+        open[1] = goOnHigh;
+        return true;
+    }
+
+    // Write a capture which ended, with the dead pieces, unless it was already found by another way
+    private int addCapture(int from, int to, boolean isPremotion, int hops, long[] moves, int first, int end)
+    {
+        long captured = 0;
+        for (int word = 0; word < 2; word++)
+            for (long bits = dead[word]; bits != 0; bits &= bits - 1)
+                captured |= 1L << tables.innerIndex[(word << 6) + Long.numberOfTrailingZeros(bits)];
+        long move = Move.of(from, to, isPremotion, captured);
+
+        if (move == pathTarget && pathFound == null
+                && (pathWanted == null || Arrays.equals(pathWanted, 0, pathWanted.length, landings, 0, hops)))
+            pathFound = Arrays.copyOf(landings, hops);
+        // Past the end of the buffer the moves are only counted, some of them twice
+        for (int i = first; i < Math.min(end, moves.length) && !isEveryPath; i++)
+            if (moves[i] == move)
+                return end;
+        if (end < moves.length)
+            moves[end] = move;
+        return end + 1;
+    }
+
+    /**
+     * Find the squares a capture lands on, hop by hop, so it can be named or played one hop at a time
+     * @param move: a capture generated in this position
+     * @return the landing of every hop, the last one is the destination
+     */
+    int[] path(long move)
+    {
+        return findPath(move, null);
+    }
+
+    // The landings of a way to make the capture, those wanted if it can be made by them; null if it can't
+    private int[] findPath(long move, int[] wanted)
+    {
+        pathTarget = move;
+        pathWanted = wanted;
+        pathFound = null;
+        // The path is found however many captures fit in the buffer
+        generateCaptures(Move.from(move), new long[roomForMoves()], 0);
+        int[] found = pathFound;
+        pathTarget = Move.NONE;
+        pathWanted = null;
+        pathFound = null;
+        return found;
+    }
+
+    // The row a pawn of the kind becomes a queen on
+    private int premotionRow(int kind)
+    {
+        return (kind & 1) == BLACK_PAWN ? LENGTH - 1 : 0;
+    }
+
+    private static boolean isTaken(int square, long takenLow, long takenHigh)
+    {
+        return ((square < 64 ? takenLow : takenHigh) & 1L << square) != 0;
+    }
+
+    private boolean canPawnCapture(int square, int kind, long takenLow, long takenHigh)
+    {
+        for (int dir = 0; dir < 4; dir++)
+        {
+            int to = jump[square << 2 | dir];
+            if (to != NONE && isEnemy(squares[neighbour[square << 2 | dir]], kind) && !isTaken(to, takenLow, takenHigh))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean canCapture(int square, int kind, long takenLow, long takenHigh)
+    {
+        if (kind < WHITE_QUEEN)
+            return canPawnCapture(square, kind, takenLow, takenHigh);
+        return canQueenCapture(square, kind, takenLow, takenHigh);
+    }
+
+    // A word of the bitboard of the squares which aren't empty, the dead pieces included
+    private long taken(int word)
+    {
+        return pieces[WHITE_PAWN][word] | pieces[BLACK_PAWN][word]
+                | pieces[WHITE_QUEEN][word] | pieces[BLACK_QUEEN][word] | dead[word];
+    }
+
+    /**
+     * Find the empty squares along a ray, those before its first taken square, into open
+     * @return the first taken square, NONE if the ray is empty to the edge
+     */
+    private int openRay(int square, int dir, long takenLow, long takenHigh)
+    {
+        long[] ray = rayMasks[square << 2 | dir];
+        open[0] = ray[0];
+        open[1] = ray[1];
+        int blocker = tables.firstBlocker(square, dir, takenLow, takenHigh);
+        if (blocker != NONE)
+        {
+            // The blocker and everything behind it
+            long[] behind = rayMasks[blocker << 2 | dir];
+            open[0] &= ~behind[0];
+            open[1] &= ~behind[1];
+            open[blocker >>> 6] &= ~(1L << blocker);
+        }
+        return blocker;
+    }
+
+    /**
+     * Check if the player to move has a capture.
+     * The pawns are checked all at once by shifting the bitboards, whatever the board size;
+     * a queen by the first piece along every ray of hers
+     */
+    boolean doesCaptureExist()
+    {
+        int side = turn ? 1 : 0;
+        long enemyLow = pieces[BLACK_PAWN - side][0] | pieces[BLACK_QUEEN - side][0];
+        long enemyHigh = pieces[BLACK_PAWN - side][1] | pieces[BLACK_QUEEN - side][1];
+        long takenLow = taken(0);
+        long takenHigh = taken(1);
+
+        // A pawn with an enemy on the adjacent square and an empty one behind it
+        long[] pawns = pieces[WHITE_PAWN + side];
+        for (int group = 0; group < 8; group++)
+        {
+            long low = pawns[0] & tables.captureFrom[group][0];
+            long high = pawns[1] & tables.captureFrom[group][1];
+            if ((low | high) == 0)
+                continue;
+            int step = tables.step[group];
+            int leap = tables.leap[group];
+            low &= MoveTables.shiftedLow(enemyLow, enemyHigh, step) & ~MoveTables.shiftedLow(takenLow, takenHigh, leap);
+            high &= MoveTables.shiftedHigh(enemyLow, enemyHigh, step) & ~MoveTables.shiftedHigh(takenLow, takenHigh, leap);
+            if ((low | high) != 0)
+                return true;
+        }
+
+        long[] queens = pieces[WHITE_QUEEN + side];
+        for (int word = 0; word < 2; word++)
+        {
+            for (long own = queens[word]; own != 0; own &= own - 1)
+            {
+                int square = (word << 6) + Long.numberOfTrailingZeros(own);
+                if (canQueenCapture(square, squares[square], takenLow, takenHigh))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // Can a queen of the kind on the square capture: is the first piece along a ray an enemy,
+    // with an empty square behind it
+    private boolean canQueenCapture(int square, int kind, long takenLow, long takenHigh)
+    {
+        for (int dir = 0; dir < 4; dir++)
+        {
+            int blocker = tables.firstBlocker(square, dir, takenLow, takenHigh);
+            if (blocker == NONE || !isEnemy(squares[blocker], kind))
+                continue;
+            int behind = neighbour[blocker << 2 | dir];
+            if (behind != NONE && !isTaken(behind, takenLow, takenHigh))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a move which isn't a capture is possible for the player to move
+     */
+    boolean canPlay()
+    {
+        int side = turn ? 1 : 0;
+        for (int word = 0; word < 2; word++)
+        {
+            long own = pieces[WHITE_PAWN + side][word] | pieces[WHITE_QUEEN + side][word];
+            for (; own != 0; own &= own - 1)
+            {
+                int square = (word << 6) + Long.numberOfTrailingZeros(own);
+                int dir = (squares[square] >= WHITE_QUEEN || turn) ? 0 : 2;
+                int last = (squares[square] >= WHITE_QUEEN || !turn) ? 4 : 2;
+                for (; dir < last; dir++)
+                {
+                    int to = neighbour[square << 2 | dir];
+                    if (to != NONE && squares[to] == EMPTY)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Make / Unmake">
+    /**
+     * Play a move generated in this position, a capture with all its hops at once.
+     * Premote the pawn and change the turn, like the board does.
+     * @param move: the packed move to play
+     */
+    void makeMove(long move)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int kind = squares[from];
+        long captured = Move.captured(move);
+
+        // Push the state this move changes
+        if (undoTop == undoStates.length)
+        {
+            undoStates = Arrays.copyOf(undoStates, undoTop * 2);
+            undoQueens = Arrays.copyOf(undoQueens, undoTop * 2);
+            undoHash = Arrays.copyOf(undoHash, undoTop * 2);
+        }
+        undoStates[undoTop] = (movesWithoutProgress & 0xFF) | (isForced ? 1 << 8 : 0) | (turn ? 1 << 9 : 0);
+        undoHash[undoTop] = hash;
+
+        remove(from, kind);
+        add(to, Move.isPremotion(move) ? kind + 2 : kind);
+        long capturedQueens = 0;
+        for (long bits = captured; bits != 0; bits &= bits - 1)
+        {
+            int index = Long.numberOfTrailingZeros(bits);
+            int square = tables.innerSquare[index];
+            if (squares[square] >= WHITE_QUEEN)
+                capturedQueens |= 1L << index;
+            remove(square, squares[square]);
+        }
+        undoQueens[undoTop] = capturedQueens;
+        undoTop++;
+
+        hash ^= Zobrist.progress(movesWithoutProgress);
+        if (captured != 0 || kind < WHITE_QUEEN)
+            movesWithoutProgress = 0;
+        else
+            movesWithoutProgress++;
+        hash ^= Zobrist.progress(movesWithoutProgress);
+        changeTurn();
+    }
+
+    /**
+     * Take back the last move made
+     * @param move: the packed move
+     */
+    void undoMove(long move)
+    {
+        int state = undoStates[--undoTop];
+        int from = Move.from(move);
+        int to = Move.to(move);
+
+        int kind = squares[to];
+        remove(to, kind);
+        add(from, Move.isPremotion(move) ? kind - 2 : kind);
+
+        // The captured pieces are of the other color, queens by the undo stack
+        int enemy = (kind & 1) ^ 1;
+        long queens = undoQueens[undoTop];
+        for (long bits = Move.captured(move); bits != 0; bits &= bits - 1)
+        {
+            int index = Long.numberOfTrailingZeros(bits);
+            add(tables.innerSquare[index], (queens >>> index & 1) != 0 ? enemy + 2 : enemy);
+        }
+
+        movesWithoutProgress = state & 0xFF;
+        isForced = (state & 1 << 8) != 0;
+        turn = (state & 1 << 9) != 0;
+        hash = undoHash[undoTop];
+    }
+
+    private void changeTurn()
+    {
+        turn = !turn;
+        hash ^= Zobrist.TURN;
+        isForced = doesCaptureExist();
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,370 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Endgame tablebase: the exact result of every 8x8 position of a few queens and no pawns.
+ * In such endgames the queens have long rays and the game is drawn after MOVES_FOR_DRAW moves without
+ * a capture, so the static evaluation knows little and the search goes wide.
+ * Every position with the player to move has a byte: DRAW, or WIN | n (LOSS | n) - the player to move
+ * wins (loses) by a capture within n plies, so the result holds while n plies are left before the draw.
+ * The bases are built by retrograde analysis, fewest pieces first: a capture leads to a base already
+ * built, and layer n holds the positions decided in n plies, found from the layers before it.
+ * A position is indexed by the combinations of the white and the black queen squares, and the file
+ * is mapped into memory, so a probe reads a single byte and nothing is loaded up front.
+ * Usage: java main.Tablebase [pieces] [file]
+ * @author Daniel Kanevsky
+ */
+final class Tablebase {
+
+    // Height and width of the board of the bases, 8x8 Russian checkers
+    static final int LENGTH = 8;
+    // Dark squares of the board, a bit of the first word of a bitboard each
+    private static final int SQUARES = LENGTH * LENGTH / 2;
+    // Most pieces of a base: six of them take 200MB and days to build
+    private static final int MAX_PIECES = 6;
+    private static final int DEFAULT_PIECES = 4;
+    // Read by the board and the engine at startup, from the working directory
+    static final String DEFAULT_FILE = "tablebase8.bin";
+
+    //<editor-fold defaultstate="collapsed" desc="Results">
+    private static final int DRAW = 0;
+    private static final int WIN = 0x40;
+    private static final int LOSS = 0x80;
+    private static final int DISTANCE = 0x3F; // Plies to the capture that decides the game
+    //</editor-fold>
+
+    // File header: magic "DTB1", then the board length, the most pieces and the moves to a draw
+    private static final int MAGIC = 0x44544231;
+    private static final int HEADER = 16;
+
+    // Binomial coefficients C(n, k), the number of sets of k squares among n
+    private static final int[][] BINOMIAL = new int[SQUARES + 1][MAX_PIECES + 1];
+
+    static
+    {
+        for (int n = 0; n <= SQUARES; n++)
+        {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES && k <= n; k++)
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k < n ? BINOMIAL[n - 1][k] : 0);
+        }
+    }
+
+    // Most pieces of the positions in the bases
+    final int maxPieces;
+    // The header, then the bases one after the other
+    private final ByteBuffer data;
+    // Offset of the base of every number of white queens, black queens and turn, see key()
+    private final int[] offsets;
+
+    /**
+     * @param maxPieces: most pieces of the positions in the bases
+     * @param data: the bases with their header, null for new empty bases
+     */
+    private Tablebase(int maxPieces, ByteBuffer data)
+    {
+        this.maxPieces = maxPieces;
+        offsets = new int[(maxPieces + 1) * (maxPieces + 1) * 2];
+        int size = HEADER;
+        for (int pieces = 2; pieces <= maxPieces; pieces++)
+        {
+            for (int white = 1; white < pieces; white++)
+            {
+                int black = pieces - white;
+                for (int turn = 0; turn < 2; turn++)
+                {
+                    offsets[key(white, black, turn)] = size;
+                    size += BINOMIAL[SQUARES][white] * BINOMIAL[SQUARES][black];
+                }
+            }
+        }
+
+        if (data == null)
+        {
+            data = ByteBuffer.allocate(size);
+            data.putInt(0, MAGIC).putInt(4, LENGTH).putInt(8, maxPieces).putInt(12, Position.MOVES_FOR_DRAW);
+        }
+        else if (data.limit() != size)
+            throw new IllegalArgumentException("Truncated tablebase of " + maxPieces + " pieces");
+        this.data = data;
+    }
+
+    private int key(int white, int black, int turn)
+    {
+        return (white * (maxPieces + 1) + black) << 1 | turn;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Probe">
+    /**
+     * Map the bases of a file into memory
+     * @param file: bases written by the generator
+     * @return the bases
+     * @throws IOException if the file can't be read or isn't a tablebase of this board and rules
+     */
+    static Tablebase open(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.limit() < HEADER || data.getInt(0) != MAGIC || data.getInt(4) != LENGTH
+                    || data.getInt(12) != Position.MOVES_FOR_DRAW)
+                throw new IOException("Not a tablebase of these rules: " + file);
+            int maxPieces = data.getInt(8);
+            if (maxPieces < 2 || maxPieces > MAX_PIECES)
+                throw new IOException("Bad number of pieces in " + file);
+            try {
+                return new Tablebase(maxPieces, data);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException(ex.getMessage() + ": " + file, ex);
+            }
+        }
+    }
+
+    /**
+     * Open the bases in the working directory, if they were generated
+     * @return the bases, null if there are none or they can't be read
+     */
+    static Tablebase openDefault()
+    {
+        Path file = Paths.get(DEFAULT_FILE);
+        if (!Files.exists(file))
+            return null;
+        try {
+            return open(file);
+        } catch (IOException ex) {
+            Logger.getLogger(Tablebase.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the position is in the bases: queens alone on 8x8, both sides with some, between turns
+     */
+    boolean covers(Position position)
+    {
+        return position.LENGTH == LENGTH
+                && position.whitePawnsLeft + position.blackPawnsLeft <= maxPieces
+                && position.whiteQueens == position.whitePawnsLeft && position.blackQueens == position.blackPawnsLeft
+                && position.whiteQueens > 0 && position.blackQueens > 0;
+    }
+
+    /**
+     * The exact result of a covered position, with its moves without progress
+     * @return plies to the capture which wins for the player to move, minus the plies to the one which loses,
+     *         0 - a draw
+     */
+    int probe(Position position)
+    {
+        int entry = entry(position);
+        int plies = entry & DISTANCE;
+        if (entry == DRAW || plies > Position.MOVES_FOR_DRAW - position.movesWithoutProgress)
+            return 0;
+        return (entry & LOSS) != 0 ? -plies : plies;
+    }
+
+    // The byte of a covered position
+    private int entry(Position position)
+    {
+        int base = offsets[key(position.whiteQueens, position.blackQueens, position.turn ? 1 : 0)];
+        int index = rank(position.pieces[Position.WHITE_QUEEN][0]) * BINOMIAL[SQUARES][position.blackQueens]
+                + rank(position.pieces[Position.BLACK_QUEEN][0]);
+        return data.get(base + index) & 0xFF;
+    }
+
+    // Index of a set of squares among the sets of its size, in the order of nextSet
+    private static int rank(long set)
+    {
+        int rank = 0;
+        for (int k = 1; set != 0; set &= set - 1, k++)
+            rank += BINOMIAL[Long.numberOfTrailingZeros(set)][k];
+        return rank;
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Generation">
+    /**
+     * Build the bases of every number of queens up to maxPieces, reporting every base on stdout
+     * @param maxPieces: most pieces of the positions in the bases
+     * @return the bases, in memory
+     */
+    static Tablebase generate(int maxPieces)
+    {
+        Tablebase tablebase = new Tablebase(maxPieces, null);
+        Position position = new Position(LENGTH, 3);
+        long[] moves = new long[position.roomForMoves()];
+        for (int pieces = 2; pieces <= maxPieces; pieces++)
+        {
+            for (int white = 1; white < pieces; white++)
+            {
+                long start = System.nanoTime();
+                tablebase.solve(white, pieces - white, position, moves);
+                System.out.println(tablebase.report(white, pieces - white, System.nanoTime() - start));
+            }
+        }
+        return tablebase;
+    }
+
+    /**
+     * Find the results of the base of the numbers of queens, layer after layer.
+     * The bases with fewer pieces are already built
+     */
+    private void solve(int white, int black, Position position, long[] moves)
+    {
+        int blackSets = BINOMIAL[SQUARES][black];
+        for (int distance = 1; distance <= Position.MOVES_FOR_DRAW; distance++)
+        {
+            // A layer is found from the ones before it, so once one is empty so is every layer after it
+            int decided = 0;
+            for (int turn = 0; turn < 2; turn++)
+            {
+                int base = offsets[key(white, black, turn)];
+                int whiteRank = 0;
+                for (long whiteSet = (1L << white) - 1; whiteSet < 1L << SQUARES; whiteSet = nextSet(whiteSet), whiteRank++)
+                {
+                    int blackRank = 0;
+                    for (long blackSet = (1L << black) - 1; blackSet < 1L << SQUARES; blackSet = nextSet(blackSet), blackRank++)
+                    {
+                        int at = base + whiteRank * blackSets + blackRank;
+                        if ((whiteSet & blackSet) != 0 || data.get(at) != DRAW)
+                            continue;
+
+                        setUp(position, whiteSet, blackSet, turn == 1);
+                        int outcome = bestTurn(position, moves, distance);
+                        if (outcome != DRAW)
+                        {
+                            data.put(at, (byte) (outcome | distance));
+                            decided++;
+                        }
+                    }
+                }
+            }
+            if (decided == 0)
+                break;
+        }
+    }
+
+    // The next set of as many squares, in increasing order of the bits (Gosper's hack)
+    private static long nextSet(long set)
+    {
+        long lowest = set & -set;
+        long ripple = set + lowest;
+        return ripple | ((set ^ ripple) >>> 2) / lowest;
+    }
+
+    private static void setUp(Position position, long whiteSet, long blackSet, boolean turn)
+    {
+        position.clear();
+        for (; whiteSet != 0; whiteSet &= whiteSet - 1)
+        {
+            int square = Long.numberOfTrailingZeros(whiteSet);
+            position.put(position.rowOf[square], position.colOf[square], Position.WHITE_QUEEN);
+        }
+        for (; blackSet != 0; blackSet &= blackSet - 1)
+        {
+            int square = Long.numberOfTrailingZeros(blackSet);
+            position.put(position.rowOf[square], position.colOf[square], Position.BLACK_QUEEN);
+        }
+        position.turn = turn;
+        position.isForced = position.doesCaptureExist();
+    }
+
+    /**
+     * The best outcome of the turns of the player to move
+     * @param distance: plies the player has to decide the game in
+     * @return WIN if a turn wins within distance plies, LOSS if every turn loses within them, DRAW otherwise
+     */
+    private int bestTurn(Position position, long[] moves, int distance)
+    {
+        int end = position.generateMoves(moves, 0);
+        if (end > moves.length)
+            return bestTurn(position, new long[end], distance);
+        int best = LOSS; // A player who can't move loses
+        for (int i = 0; i < end && best != WIN; i++)
+        {
+            long move = moves[i];
+            position.makeMove(move);
+            int outcome = opposite(afterTurn(position, Move.isCapture(move), distance));
+            position.undoMove(move);
+            if (outcome == WIN || (outcome == DRAW && best == LOSS))
+                best = outcome;
+        }
+        return best;
+    }
+
+    /**
+     * The outcome for the player to move after a turn, by the results known so far
+     * @param isCapture: did the turn capture, which starts the count of moves without progress anew
+     * @param distance: plies the player before the turn had to decide the game in
+     */
+    private int afterTurn(Position position, boolean isCapture, int distance)
+    {
+        if ((position.turn ? position.blackPawnsLeft : position.whitePawnsLeft) == 0)
+            return LOSS;
+        int entry = entry(position);
+        // A queen move leaves one ply less, and the results of this layer aren't known yet
+        if (entry == DRAW || (!isCapture && (entry & DISTANCE) >= distance))
+            return DRAW;
+        return entry & (WIN | LOSS);
+    }
+
+    private static int opposite(int outcome)
+    {
+        return outcome == WIN ? LOSS : outcome == LOSS ? WIN : DRAW;
+    }
+
+    private String report(int white, int black, long nanos)
+    {
+        int[] counts = new int[3];
+        for (int turn = 0; turn < 2; turn++)
+        {
+            int base = offsets[key(white, black, turn)];
+            int whiteRank = 0;
+            for (long whiteSet = (1L << white) - 1; whiteSet < 1L << SQUARES; whiteSet = nextSet(whiteSet), whiteRank++)
+            {
+                int blackRank = 0;
+                for (long blackSet = (1L << black) - 1; blackSet < 1L << SQUARES; blackSet = nextSet(blackSet), blackRank++)
+                {
+                    if ((whiteSet & blackSet) != 0)
+                        continue;
+                    int entry = data.get(base + whiteRank * BINOMIAL[SQUARES][black] + blackRank) & 0xFF;
+                    counts[entry == DRAW ? 0 : (entry & WIN) != 0 ? 1 : 2]++;
+                }
+            }
+        }
+        return String.format(Locale.ROOT, "%d white vs %d black queens: %d wins, %d draws, %d losses for the player to move  %.1f s",
+                white, black, counts[1], counts[0], counts[2], nanos / 1e9);
+    }
+
+    /**
+     * Write the bases to a file, which open() maps
+     */
+    void write(Path file) throws IOException
+    {
+        Files.write(file, data.array());
+    }
+    //</editor-fold>
+
+    public static void main(String[] args) throws IOException
+    {
+        int pieces = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PIECES;
+        Path file = Paths.get(args.length > 1 ? args[1] : DEFAULT_FILE);
+        if (pieces < 2 || pieces > MAX_PIECES)
+        {
+            System.err.println("Usage: java main.Tablebase [pieces] [file] - pieces from 2 to " + MAX_PIECES);
+            System.exit(2);
+        }
+        generate(pieces).write(file);
+        System.out.println("Written " + file);
+    }
+}
@@ -0,0 +1,224 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Self-play: headless games between two computer settings, played in parallel.
+ * Every game starts with a few random turns, and every opening is played twice, each player
+ * playing both colors. A game is drawn after MOVES_FOR_DRAW moves without progress, like on the board.
+ * Usage: java main.Tournament games length pawnRows playerA playerB [threads]
+ * A player is "name=value" pairs: depth and time (milliseconds a move, 0 - no limit)
+ * set the search, tablebase a file of endgames to probe, the rest are evaluation weights,
+ * e.g. "depth=6,time=0,tablebase=tablebase8.bin,queen=1.3".
+ * @author Daniel Kanevsky
+ */
+final class Tournament {
+
+    // Random turns played before the computers take over
+    private static final int OPENING_TURNS = 4;
+    // Plies after which a game is adjudicated a draw, in case it never ends otherwise
+    private static final int MAX_PLIES = 500;
+    // Memory budget of the table of every computer, two of them for every thread
+    private static final int TABLE_MEGABYTES = 16;
+    // Seed of the openings, so a tournament can be repeated
+    private static final long SEED = 0x70_0A_4EL;
+
+    // Results of a game for player A
+    private static final int LOSS = 0;
+    private static final int DRAW = 1;
+    private static final int WIN = 2;
+
+    // Tablebases of the players, by file
+    private static final Map<String, Tablebase> TABLEBASES = new HashMap<>();
+
+    private final int length;
+    private final int pawnRows;
+    private final String[] players; // Settings of player A and player B
+
+    // The two computers of every thread, each game reuses them
+    private final ThreadLocal<Computer[]> computers;
+
+    // Totals of the tournament, guarded by this
+    private final int[] results = new int[3];
+    private final long[] nodes = new long[2];
+    private final long[] nanos = new long[2];
+
+    private Tournament(int length, int pawnRows, String playerA, String playerB)
+    {
+        this.length = length;
+        this.pawnRows = pawnRows;
+        players = new String[] {playerA, playerB};
+        computers = ThreadLocal.withInitial(() -> new Computer[] {computer(players[0]), computer(players[1])});
+        // Fail on bad settings before any game starts
+        computer(playerA);
+        computer(playerB);
+    }
+
+    /**
+     * @param settings: "name=value" pairs, depth, time and tablebase for the search, the rest for the weights
+     * @return a single threaded computer with the settings
+     */
+    private static Computer computer(String settings)
+    {
+        Computer computer = new Computer();
+        computer.threads = 1;
+        computer.depthMax = Main.MEDIUM;
+        computer.timeBudget = 0;
+        computer.setTableSize(TABLE_MEGABYTES);
+        StringBuilder weights = new StringBuilder();
+        for (String pair : settings.split(","))
+        {
+            String[] nameValue = pair.split("=", 2);
+            if (nameValue[0].trim().equals("depth"))
+                computer.depthMax = Integer.parseInt(nameValue[1].trim());
+            else if (nameValue[0].trim().equals("time"))
+                computer.timeBudget = Long.parseLong(nameValue[1].trim());
+            else if (nameValue[0].trim().equals("tablebase"))
+                computer.tablebase = tablebase(nameValue[1].trim());
+            else
+                weights.append(pair).append(',');
+        }
+        computer.weights = Weights.parse(weights.toString());
+        return computer;
+    }
+
+    // The tablebase of the file, mapped once for all the computers which probe it
+    private static synchronized Tablebase tablebase(String file)
+    {
+        return TABLEBASES.computeIfAbsent(file, name -> {
+            try {
+                return Tablebase.open(Paths.get(name));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Play a game from a random opening
+     * @param opening: number of the opening, its seed
+     * @param isABlack: does player A play black
+     * @return the result for player A
+     */
+    private int play(int opening, boolean isABlack)
+    {
+        Computer[] computer = computers.get();
+        Position game = new Position(length, pawnRows);
+        game.setStartPosition();
+
+        Random random = new Random(SEED + opening);
+        for (int turns = 0; turns < OPENING_TURNS; turns++)
+        {
+            long[] moves = game.generateMoves();
+            if (moves.length == 0)
+                break;
+            game.makeMove(moves[random.nextInt(moves.length)]);
+        }
+
+        for (Computer player : computer)
+            player.clearTable();
+        long[] gameNodes = new long[2];
+        long[] gameNanos = new long[2];
+        int result = DRAW;
+        for (int plies = 0; plies < MAX_PLIES && game.movesWithoutProgress < Position.MOVES_FOR_DRAW; plies++)
+        {
+            // Player A is 0, player B is 1
+            int mover = game.turn == isABlack ? 0 : 1;
+            computer[mover].position = game;
+            long start = System.nanoTime();
+            long move = computer[mover].play();
+            gameNanos[mover] += System.nanoTime() - start;
+            gameNodes[mover] += computer[mover].nodes();
+            if (move == Move.NONE)
+            {
+                result = mover == 0 ? LOSS : WIN;
+                break;
+            }
+        }
+
+        synchronized (this)
+        {
+            results[result]++;
+            for (int player = 0; player < 2; player++)
+            {
+                nodes[player] += gameNodes[player];
+                nanos[player] += gameNanos[player];
+            }
+        }
+        return result;
+    }
+
+    private synchronized String summary()
+    {
+        int games = results[LOSS] + results[DRAW] + results[WIN];
+        double score = (results[WIN] + 0.5 * results[DRAW]) / Math.max(games, 1);
+        // Deviation of the score of a game, for the error margin of the mean
+        double variance = (results[WIN] * (1 - score) * (1 - score) + results[DRAW] * (0.5 - score) * (0.5 - score)
+                + results[LOSS] * score * score) / Math.max(games, 1);
+        double margin = 1.96 * Math.sqrt(variance / Math.max(games, 1));
+        double elo = elo(score);
+        double eloMargin = (elo(score + margin) - elo(score - margin)) / 2;
+
+        return String.format(Locale.ROOT,
+                "Games %d: A won %d, drew %d, lost %d  score %.1f%%  Elo difference %+.1f +/- %.1f%n"
+                + "A: %s  %.0f nodes/s%nB: %s  %.0f nodes/s",
+                games, results[WIN], results[DRAW], results[LOSS], 100 * score, elo, eloMargin,
+                players[0], nodes[0] * 1e9 / Math.max(nanos[0], 1), players[1], nodes[1] * 1e9 / Math.max(nanos[1], 1));
+    }
+
+    // Elo difference expected from the score, infinite when it's 0 or 1
+    private static double elo(double score)
+    {
+        score = Math.min(Math.max(score, 1e-9), 1 - 1e-9);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length < 5)
+        {
+            System.err.println("Usage: java main.Tournament games length pawnRows playerA playerB [threads]");
+            System.exit(2);
+        }
+        int games = Integer.parseInt(args[0]);
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        Tournament tournament = new Tournament(Integer.parseInt(args[1]), Integer.parseInt(args[2]), args[3], args[4]);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> played = new ArrayList<>();
+        for (int game = 0; game < games; game++)
+        {
+            int opening = game / 2;
+            boolean isABlack = game % 2 == 1;
+            played.add(pool.submit(() -> tournament.play(opening, isABlack)));
+        }
+        pool.shutdown();
+
+        int reportEvery = Math.max(games / 10, 1);
+        for (int game = 0; game < played.size(); game++)
+        {
+            try {
+                played.get(game).get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(Tournament.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            if ((game + 1) % reportEvery == 0 && game + 1 < played.size())
+                System.out.println(tournament.summary());
+        }
+        System.out.println(tournament.summary());
+    }
+}
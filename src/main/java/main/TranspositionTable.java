@@ -0,0 +1,101 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table of the search, indexed by the position hash.
+ * Every entry is two longs: the data (score, key of the best move, depth and bound type)
+ * and the hash XOR-ed with the data. A torn entry written by two threads at once
+ * fails the check on probe, so no locks are needed.
+ * @author Daniel Kanevsky
+ */
+final class TranspositionTable {
+
+    // Bound types of a stored score
+    static final int EXACT = 1;
+    static final int LOWER = 2; // The real score is at least the stored one
+    static final int UPPER = 3; // The real score is at most the stored one
+
+    private static final int MOVE_MASK = 0x1FFFFF;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * @param megabytes: memory budget of the table, rounded down to a power of two of entries
+     */
+    TranspositionTable(int megabytes)
+    {
+        long entries = Math.max(1, ((long) megabytes << 20) / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return the data stored for the hash, 0 if there is none
+     */
+    long probe(long hash)
+    {
+        int index = (int) hash & mask;
+        long entry = data[index];
+        if ((keys[index] ^ entry) != hash)
+            return 0;
+        return entry;
+    }
+
+    /**
+     * Store a search result, unless a deeper result of the same position is stored
+     * @param hash: hash of the position
+     * @param depth: depth searched below the position
+     * @param bound: EXACT, LOWER or UPPER
+     * @param score: score of the position in centipawns, a win as its distance from the position
+     * @param move: best move found, Move.NONE if unknown. Only its key is kept (see Move.key)
+     */
+    void store(long hash, int depth, int bound, int score, long move)
+    {
+        int index = (int) hash & mask;
+        long old = data[index];
+        if ((keys[index] ^ old) == hash && depth(old) > depth)
+            return;
+
+        long entry = (score & 0xFFFFFFFFL)
+                | (long) Move.key(move) << 32
+                | (long) depth << 53
+                | (long) bound << 61;
+        keys[index] = hash ^ entry;
+        data[index] = entry;
+    }
+
+    /**
+     * Forget every stored result
+     */
+    void clear()
+    {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    static int score(long entry)
+    {
+        return (int) entry;
+    }
+
+    // Key of the best move, that of Move.NONE if it's unknown
+    static int moveKey(long entry)
+    {
+        return (int) (entry >>> 32) & MOVE_MASK;
+    }
+
+    static int depth(long entry)
+    {
+        return (int) (entry >>> 53) & 0xFF;
+    }
+
+    static int bound(long entry)
+    {
+        return (int) (entry >>> 61);
+    }
+}
@@ -0,0 +1,369 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tuning of the evaluation weights by the results of self-play games (Texel's method).
+ * First the quiet positions of self-play games, those without a capture to make, are written with the result
+ * of their game. Then the weights are fitted so the evaluation predicts the results: a value v in centipawns
+ * predicts the score 1 / (1 + 10^(-K * v / 400)) for black, K fitted to the weights the tuning starts from,
+ * and the mean squared error of the predictions is lowered one centipawn of one weight at a time, until no step
+ * lowers it. The positions are read as a stream and kept as the counts of their evaluation terms,
+ * which are parsed and summed on every thread.
+ * Usage:
+ *   java main.Tuner play length pawnRows games depth positions [threads]
+ *   java main.Tuner tune length pawnRows positions [weights] [threads]
+ * A line of positions is the result of its game for black (1, 0.5 or 0) and the FEN of the position.
+ * The tuning starts from the weights of the file, if there is one, and writes the tuned weights to it
+ * (by default the file the board and the engine read, see Weights).
+ * The capture term only counts when there is a capture, so it's left as it is.
+ * @author Daniel Kanevsky
+ */
+final class Tuner {
+
+    // Random turns played before the computers take over, so every game is different
+    private static final int OPENING_TURNS = 6;
+    // Plies after which a game is adjudicated a draw, in case it never ends otherwise
+    private static final int MAX_PLIES = 500;
+    // Memory budget of the table of every computer, one for every thread
+    private static final int TABLE_MEGABYTES = 16;
+    // Seed of the openings, so the positions can be generated again
+    private static final long SEED = 0x7E_C5L;
+
+    // Lines of positions read at once, then parsed by all the threads
+    private static final int BATCH = 1 << 16;
+    // A position is STRIDE bytes: the count of every term, the material and the result in half points for black
+    private static final int TERMS = Weights.NAMES.length;
+    private static final int MATERIAL = TERMS;
+    private static final int RESULT = TERMS + 1;
+    private static final int STRIDE = TERMS + 2;
+
+    // Range of the scaling K of the values, searched for the one which predicts the results best
+    private static final double MAX_SCALE = 10;
+    private static final int SCALE_ITERATIONS = 50;
+
+    private final ExecutorService pool;
+    private final int threads;
+
+    // The positions loaded
+    private byte[] positions = new byte[BATCH * STRIDE];
+    private int count;
+
+    private Tuner(int threads)
+    {
+        this.threads = threads;
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Self-play">
+    /**
+     * Play a game from a random opening
+     * @param computer: plays both sides
+     * @param game: number of the game, the seed of its opening
+     * @return the lines of the quiet positions of the game, with its result
+     */
+    private static List<String> play(Computer computer, int length, int pawnRows, int game)
+    {
+        Position position = new Position(length, pawnRows);
+        position.setStartPosition();
+        Random random = new Random(SEED + game);
+        for (int turns = 0; turns < OPENING_TURNS; turns++)
+        {
+            long[] moves = position.generateMoves();
+            if (moves.length == 0)
+                break;
+            position.makeMove(moves[random.nextInt(moves.length)]);
+        }
+
+        computer.clearTable();
+        computer.position = position;
+        List<String> fens = new ArrayList<>();
+        String result = "0.5";
+        for (int plies = 0; plies < MAX_PLIES && position.movesWithoutProgress < Position.MOVES_FOR_DRAW; plies++)
+        {
+            // A capture would change the value at once, so the position isn't quiet
+            if (!position.isForced)
+                fens.add(position.toFen());
+            if (computer.play() == Move.NONE)
+            {
+                // The player to move lost, the position has no value to learn
+                fens.remove(fens.size() - 1);
+                result = position.turn ? "0" : "1";
+                break;
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String fen : fens)
+            lines.add(result + " " + fen);
+        return lines;
+    }
+
+    /**
+     * Play games of self-play on every thread, writing their quiet positions in the order of the games
+     * @param depth: depth of the searches
+     * @param file: the positions are written to
+     */
+    private void play(int length, int pawnRows, int games, int depth, Path file) throws IOException
+    {
+        ThreadLocal<Computer> computers = ThreadLocal.withInitial(() -> {
+            Computer computer = new Computer();
+            computer.threads = 1;
+            computer.depthMax = depth;
+            computer.timeBudget = 0;
+            computer.setTableSize(TABLE_MEGABYTES);
+            return computer;
+        });
+        List<Future<List<String>>> played = new ArrayList<>();
+        for (int game = 0; game < games; game++)
+        {
+            int seed = game;
+            played.add(pool.submit(() -> play(computers.get(), length, pawnRows, seed)));
+        }
+
+        int reportEvery = Math.max(games / 10, 1);
+        long written = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file))
+        {
+            for (int game = 0; game < games; game++)
+            {
+                for (String line : result(played.get(game)))
+                {
+                    out.write(line);
+                    out.newLine();
+                    written++;
+                }
+                if ((game + 1) % reportEvery == 0)
+                    System.out.println("Game " + (game + 1) + ": " + written + " positions");
+            }
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold defaultstate="collapsed" desc="Tuning">
+    /**
+     * Load the positions of a file, a batch of lines at a time, keeping the counts of their terms
+     * @throws IllegalArgumentException on a line which isn't a result and a position
+     */
+    private void load(Path file, int length, int pawnRows) throws IOException
+    {
+        try (BufferedReader in = Files.newBufferedReader(file))
+        {
+            String[] lines = new String[BATCH];
+            int read;
+            do
+            {
+                read = 0;
+                String line;
+                while (read < BATCH && (line = in.readLine()) != null)
+                {
+                    line = line.trim();
+                    if (!line.isEmpty())
+                        lines[read++] = line;
+                }
+                if ((count + read) * STRIDE > positions.length)
+                    positions = Arrays.copyOf(positions, Math.max(positions.length * 2, (count + read) * STRIDE));
+
+                int first = count;
+                sum(read, (from, to) -> {
+                    int[] terms = new int[TERMS];
+                    for (int i = from; i < to; i++)
+                        parse(lines[i], length, pawnRows, terms, first + i);
+                    return 0;
+                });
+                count += read;
+            } while (read == BATCH);
+        }
+    }
+
+    // Keep the counts of the terms of the position of a line, as the position of the index
+    private void parse(String line, int length, int pawnRows, int[] terms, int index)
+    {
+        int space = line.indexOf(' ');
+        if (space < 0)
+            throw new IllegalArgumentException("Expected a result and a position: " + line);
+        double result = Double.parseDouble(line.substring(0, space));
+        if (result != 0 && result != 0.5 && result != 1)
+            throw new IllegalArgumentException("Expected a result of 1, 0.5 or 0: " + line);
+        Position position = Position.fromFen(line.substring(space + 1).trim(), length, pawnRows);
+
+        int material = Computer.countTerms(position, terms);
+        int at = index * STRIDE;
+        for (int term = 0; term < TERMS; term++)
+            positions[at + term] = (byte) terms[term];
+        positions[at + MATERIAL] = (byte) material;
+        positions[at + RESULT] = (byte) (result * 2);
+    }
+
+    /**
+     * @param centipawns: weight of every term in centipawns
+     * @param scale: K, the scaling of the values
+     * @return the mean squared error of the predictions of the results of the positions
+     */
+    private double error(int[] centipawns, double scale)
+    {
+        // 10^(-K * v / 400) as a power of e
+        double exponent = -scale * Math.log(10) / 400;
+        return sum(count, (from, to) -> {
+            double error = 0;
+            for (int i = from; i < to; i++)
+            {
+                int at = i * STRIDE;
+                int value = Computer.PAWN_VALUE * positions[at + MATERIAL];
+                for (int term = 0; term < TERMS; term++)
+                    value += centipawns[term] * positions[at + term];
+                double miss = positions[at + RESULT] / 2.0 - 1 / (1 + Math.exp(exponent * value));
+                error += miss * miss;
+            }
+            return error;
+        }) / Math.max(count, 1);
+    }
+
+    // The scaling of the values which predicts the results best, by a golden section search
+    private double fitScale(int[] centipawns)
+    {
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 0, high = MAX_SCALE;
+        for (int iteration = 0; iteration < SCALE_ITERATIONS; iteration++)
+        {
+            double left = high - ratio * (high - low);
+            double right = low + ratio * (high - low);
+            if (error(centipawns, left) < error(centipawns, right))
+                high = right;
+            else
+                low = left;
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Lower the error by steps of a centipawn of a weight, up or down, while any step lowers it
+     * @param centipawns: weight of every term in centipawns, tuned in place
+     * @return the error of the tuned weights
+     */
+    private double tune(int[] centipawns, double scale)
+    {
+        double best = error(centipawns, scale);
+        System.out.println(String.format(Locale.ROOT, "K %.4f, error %.6f", scale, best));
+        boolean isImproved = true;
+        for (int round = 1; isImproved; round++)
+        {
+            isImproved = false;
+            for (int term = 0; term < TERMS; term++)
+            {
+                for (int step : new int[] {1, -2})
+                {
+                    centipawns[term] += step;
+                    double error = error(centipawns, scale);
+                    if (error < best)
+                    {
+                        best = error;
+                        isImproved = true;
+                        break;
+                    }
+                    // Back to the weight before the step up, for the step down
+                    if (step < 0)
+                        centipawns[term] += 1;
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "Round %d: error %.6f", round, best));
+        }
+        return best;
+    }
+    //</editor-fold>
+
+    @FunctionalInterface
+    private interface Slice
+    {
+        double sum(int from, int to);
+    }
+
+    // Split the range 0..size between the threads, and sum the results of the slices
+    private double sum(int size, Slice slice)
+    {
+        List<Future<Double>> parts = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++)
+        {
+            int from = (int) ((long) size * thread / threads);
+            int to = (int) ((long) size * (thread + 1) / threads);
+            parts.add(pool.submit(() -> slice.sum(from, to)));
+        }
+        double total = 0;
+        for (Future<Double> part : parts)
+            total += result(part);
+        return total;
+    }
+
+    // The result of a task, its exception is thrown on
+    private static <T> T result(Future<T> task)
+    {
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        boolean isPlay = args.length >= 6 && args[0].equals("play");
+        boolean isTune = args.length >= 4 && args[0].equals("tune");
+        if (!isPlay && !isTune)
+        {
+            System.err.println("Usage: java main.Tuner play length pawnRows games depth positions [threads]");
+            System.err.println("       java main.Tuner tune length pawnRows positions [weights] [threads]");
+            System.exit(2);
+        }
+        int length = Integer.parseInt(args[1]);
+        int pawnRows = Integer.parseInt(args[2]);
+        int threadsArg = isPlay ? 6 : 5;
+        int threads = args.length > threadsArg ? Integer.parseInt(args[threadsArg]) : Runtime.getRuntime().availableProcessors();
+        Tuner tuner = new Tuner(threads);
+
+        try {
+            if (isPlay)
+            {
+                tuner.play(length, pawnRows, Integer.parseInt(args[3]), Integer.parseInt(args[4]), Paths.get(args[5]));
+                return;
+            }
+
+            Path file = Paths.get(args.length > 4 ? args[4] : Weights.DEFAULT_FILE);
+            Weights weights = Files.exists(file) ? Weights.open(file) : new Weights();
+            tuner.load(Paths.get(args[3]), length, pawnRows);
+            System.out.println("Loaded " + tuner.count + " positions");
+
+            int[] centipawns = new int[TERMS];
+            for (int term = 0; term < TERMS; term++)
+                centipawns[term] = weights.centipawns(term);
+            double error = tuner.tune(centipawns, tuner.fitScale(centipawns));
+
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format(Locale.ROOT, "# Tuned on %d positions of %s to an error of %.6f", tuner.count, args[3], error));
+            for (int term = 0; term < TERMS; term++)
+                lines.add(String.format(Locale.ROOT, "%s=%.2f", Weights.NAMES[term], (double) centipawns[term] / Computer.PAWN_VALUE));
+            Files.write(file, lines);
+            System.out.println("Written " + Weights.parse(String.join("\n", lines)) + " to " + file);
+        } finally {
+            tuner.pool.shutdown();
+        }
+    }
+}
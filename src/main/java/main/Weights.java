@@ -0,0 +1,130 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Weights of the terms of the static evaluation, in pawns.
+ * Every computer has weights of its own, so differently tuned computers can play each other.
+ * Written as "name=value" pairs separated by commas or new lines, e.g. "queen=1.2,tempo=0.3".
+ * The board and the engine play by the weights of the file in the working directory, if there is one,
+ * such as the file Tuner writes.
+ * @author Daniel Kanevsky
+ */
+final class Weights {
+
+    // Read by the board and the engine at startup, from the working directory
+    static final String DEFAULT_FILE = "weights.txt";
+
+    //<editor-fold defaultstate="collapsed" desc="Terms">
+    static final int QUEEN = 0; // A queen over a pawn
+    static final int OPENING_QUEEN = 1; // A queen over a pawn, before the endgame
+    static final int TEMPO = 2; // Being the player to move
+    static final int CAPTURE = 3; // Having a capture to make
+    static final int OPENING_ADVANCED_PAWN = 4; // A pawn in the enemy territory before the endgame, usually cut off
+    static final int ENDGAME_ADVANCED_PAWN = 5; // A pawn in the enemy territory in the endgame, close to premotion
+    static final int BACK_ROW_PAWN = 6; // A pawn guarding the back row before the endgame
+
+    static final String[] NAMES = {
+        "queen", "openingQueen", "tempo", "capture", "openingAdvancedPawn", "endgameAdvancedPawn", "backRowPawn"
+    };
+    private static final double[] DEFAULTS = {1.1, 0.5, 0.25, 0.35, -0.15, 0.25, 0.2};
+    //</editor-fold>
+
+    // Weight of every term, by the indices above
+    final double[] values;
+
+    /**
+     * The default weights
+     */
+    Weights()
+    {
+        values = DEFAULTS.clone();
+    }
+
+    /**
+     * Read the weights, the terms left out keep their default weights
+     * @param text: "name=value" pairs separated by commas or new lines, '#' starts a comment
+     * @return the weights
+     * @throws IllegalArgumentException on an unknown term or a malformed pair
+     */
+    static Weights parse(String text)
+    {
+        Weights weights = new Weights();
+        for (String pair : text.split("[,\n]"))
+        {
+            int comment = pair.indexOf('#');
+            if (comment >= 0)
+                pair = pair.substring(0, comment);
+            pair = pair.trim();
+            if (pair.isEmpty())
+                continue;
+
+            int equals = pair.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("Expected name=value: " + pair);
+            int term = Arrays.asList(NAMES).indexOf(pair.substring(0, equals).trim());
+            if (term < 0)
+                throw new IllegalArgumentException("Unknown evaluation term: " + pair);
+            weights.values[term] = Double.parseDouble(pair.substring(equals + 1).trim());
+        }
+        return weights;
+    }
+
+    /**
+     * Read the weights of a file
+     * @param file: "name=value" pairs, one on every line
+     * @return the weights
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException on an unknown term or a malformed pair
+     */
+    static Weights open(Path file) throws IOException
+    {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the weights of the file in the working directory, if one was written
+     * @return the weights, the default weights if there is no file or it can't be read
+     */
+    static Weights openDefault()
+    {
+        Path file = Paths.get(DEFAULT_FILE);
+        if (!Files.exists(file))
+            return new Weights();
+        try {
+            return open(file);
+        } catch (IOException | IllegalArgumentException ex) {
+            Logger.getLogger(Weights.class.getName()).log(Level.SEVERE, null, ex);
+            return new Weights();
+        }
+    }
+
+    /**
+     * @return the weight of the term in centipawns, the unit of the search
+     */
+    int centipawns(int term)
+    {
+        return (int) Math.round(values[term] * Computer.PAWN_VALUE);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        for (int term = 0; term < values.length; term++)
+        {
+            if (term > 0)
+                text.append(',');
+            text.append(NAMES[term]).append('=').append(String.format(Locale.ROOT, "%.4f", values[term]));
+        }
+        return text.toString();
+    }
+}
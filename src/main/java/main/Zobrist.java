@@ -0,0 +1,49 @@
+package main;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing of positions.
+ * A position hash is the XOR of the keys of everything in it, so a move updates it
+ * with a few XORs instead of rehashing the whole board.
+ * @author Daniel Kanevsky
+ */
+final class Zobrist {
+
+    private Zobrist(){}
+
+    // Number of dark squares on the biggest board (12x12)
+    private static final int MAX_SQUARES = 72;
+
+    // Moves without progress that share a key
+    static final int PROGRESS_BUCKET = 4;
+
+    // Piece of a kind on a square
+    static final long[][] PIECES = new long[4][MAX_SQUARES];
+    // Bucket of the moves without progress
+    static final long[] PROGRESS = new long[Position.MOVES_FOR_DRAW / PROGRESS_BUCKET + 1];
+    // Black to play
+    static final long TURN;
+
+    static
+    {
+        // A fixed seed keeps the hashes equal between runs
+        Random random = new Random(0x5EED_DA3CAL);
+        for (long[] keys : PIECES)
+            for (int i = 0; i < MAX_SQUARES; i++)
+                keys[i] = random.nextLong();
+        for (int i = 0; i < PROGRESS.length; i++)
+            PROGRESS[i] = random.nextLong();
+        TURN = random.nextLong();
+    }
+
+    /**
+     * @return the key of the moves without progress, or 0 for none
+     */
+    static long progress(int movesWithoutProgress)
+    {
+        if (movesWithoutProgress == 0)
+            return 0;
+        return PROGRESS[Math.min(movesWithoutProgress / PROGRESS_BUCKET, PROGRESS.length - 1)];
+    }
+}
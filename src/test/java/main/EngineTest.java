@@ -0,0 +1,67 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks of the engine protocol, run by its main, which fails on the first check that doesn't hold.
+ * The engine is driven through stdin and stdout, the way a tournament manager drives it
+ * @author Daniel Kanevsky
+ */
+final class EngineTest {
+
+    public static void main(String[] args) throws IOException
+    {
+        captureIsNamed();
+        quietMoveIsNamed();
+        threadsAreChecked();
+        System.out.println("EngineTest passed");
+    }
+
+    // A capture is named with every landing of its hops, after the search made it
+    private static void captureIsNamed() throws IOException
+    {
+        String out = talk("position fen W:Wc3:Bd4,f6", "go depth 4", "isready", "quit");
+        check(out.contains("bestmove c3xe5xg7\n"), "capture bestmove", out);
+    }
+
+    private static void quietMoveIsNamed() throws IOException
+    {
+        String out = talk("position fen W:Wc3:Bh8", "go depth 4", "isready", "quit");
+        check(out.contains("bestmove c3-") && !out.contains("error"), "quiet bestmove", out);
+    }
+
+    private static void threadsAreChecked() throws IOException
+    {
+        String out = talk("threads 0", "threads 2", "go depth 4", "isready", "quit");
+        check(out.startsWith("error threads must be 1 or more\n") && out.split("error").length == 2
+                && out.contains("bestmove"), "threads", out);
+    }
+
+    // Run the engine on the commands, and return what it answered
+    private static String talk(String... commands) throws IOException
+    {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream((String.join("\n", commands) + "\n").getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(answers, true, StandardCharsets.UTF_8));
+            Engine.main(new String[0]);
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        return answers.toString(StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+
+    private static void check(boolean holds, String what, String out)
+    {
+        if (!holds)
+            throw new AssertionError(what + " failed, the engine answered:\n" + out);
+    }
+}
@@ -0,0 +1,55 @@
+package main;
+
+/**
+ * Checks of the move generator and make/unmake against known perft counts, run by its main,
+ * which fails on the first count that doesn't match.
+ * The counts of every path were checked against the generator which played captures hop by hop
+ * @author Daniel Kanevsky
+ */
+final class PerftTest {
+
+    // From the 8x8 start with 3 pawn rows, depth 1 to 8
+    private static final long[] START_8 = {7, 49, 302, 1469, 7482, 37986, 190146, 929899};
+    private static final long[] START_8_PATHS = {7, 49, 302, 1469, 7482, 37986, 190146, 929905};
+    // From the 10x10 start with 4 pawn rows, depth 1 to 6
+    private static final long[] START_10 = {9, 81, 658, 4265, 27132, 168316};
+
+    public static void main(String[] args)
+    {
+        start(8, 3, START_8, false);
+        start(8, 3, START_8_PATHS, true);
+        start(10, 4, START_10, false);
+        fen(8, 3, "W:WKc1,e3,g3,a1,h2:BKh8,b6,d6,f6,d4", 6, 28543, 28550);
+        fen(8, 3, "B:WKa1,c3,e5:BKh8,d6,f4,b4", 6, 2976, 2976);
+        fen(10, 4, "W:WKa1,c3,e5,g3,i5:BKj10,d6,f6,h6,b8,c5", 5, 625, 741);
+        fen(10, 4, "B:WKe1,f4,h4:BKf10,a5,c5,e7,g7", 5, 69738, 69895);
+        System.out.println("PerftTest passed");
+    }
+
+    // Count every depth from the start position
+    private static void start(int length, int pawnRows, long[] counts, boolean isEveryPath)
+    {
+        Position position = new Position(length, pawnRows);
+        position.setStartPosition();
+        position.isEveryPath = isEveryPath;
+        Perft perft = new Perft(position);
+        for (int depth = 1; depth <= counts.length; depth++)
+            check(perft.count(depth), counts[depth - 1], length + "x" + length + " start"
+                    + (isEveryPath ? " paths" : "") + " depth " + depth);
+    }
+
+    // Count the position to the depth, merging the paths of a capture and not
+    private static void fen(int length, int pawnRows, String fen, int depth, long count, long paths)
+    {
+        Position position = Position.fromFen(fen, length, pawnRows);
+        check(new Perft(position).count(depth), count, fen + " depth " + depth);
+        position.isEveryPath = true;
+        check(new Perft(position).count(depth), paths, fen + " paths depth " + depth);
+    }
+
+    private static void check(long counted, long expected, String what)
+    {
+        if (counted != expected)
+            throw new AssertionError(what + " counted " + counted + ", expected " + expected);
+    }
+}